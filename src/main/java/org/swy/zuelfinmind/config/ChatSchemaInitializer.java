@@ -0,0 +1,82 @@
+package org.swy.zuelfinmind.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 表结构托管：启动时保证 chat_record_v2 存在，并且有 (user_id, create_time) 联合索引
+ * 放在 ApplicationRunner 里而不是 @PostConstruct：CDS 训练运行（容器刷新完就退出）时不会去连数据库
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE) // 必须在预热之前执行
+public class ChatSchemaInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatSchemaInitializer.class);
+
+    public static final String HOT_TABLE = "chat_record_v2";
+
+    // 历史查询都是“某个用户按时间倒序”，联合索引让它只扫需要的那几行，不用排序
+    private static final String INDEX_NAME = "idx_user_time";
+
+    private static final String CREATE_HOT_TABLE = """
+            CREATE TABLE IF NOT EXISTS chat_record_v2 (
+                id          BIGINT       NOT NULL AUTO_INCREMENT,
+                user_id     VARCHAR(64)  NOT NULL,
+                question    TEXT,
+                answer      MEDIUMTEXT,
+                create_time DATETIME(3)  NOT NULL,
+                PRIMARY KEY (id),
+                KEY idx_user_time (user_id, create_time)
+            ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatSchemaInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            jdbcTemplate.execute(CREATE_HOT_TABLE);
+
+            // 老表是手工建的，可能没有索引：查 information_schema，缺了就补上
+            Integer count = jdbcTemplate.queryForObject("""
+                    SELECT COUNT(*) FROM information_schema.statistics
+                    WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?
+                    """, Integer.class, HOT_TABLE, INDEX_NAME);
+            if (count == null || count == 0) {
+                log.info("🔧 {} 缺少索引 {}，正在创建...", HOT_TABLE, INDEX_NAME);
+                jdbcTemplate.execute("ALTER TABLE " + HOT_TABLE + " ADD INDEX " + INDEX_NAME + " (user_id, create_time)");
+            }
+        } catch (Exception e) {
+            // 建表/加索引失败不影响启动，历史查询照样能用，只是慢
+            log.error("❌ 表结构初始化失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 冷数据按月分表：chat_record_archive_202601 ...
+     * 压缩行格式，历史很少被翻阅，用 CPU 换磁盘
+     */
+    public static String archiveTableDdl(String tableName) {
+        return """
+                CREATE TABLE IF NOT EXISTS %s (
+                    id          BIGINT       NOT NULL,
+                    user_id     VARCHAR(64)  NOT NULL,
+                    question    TEXT,
+                    answer      MEDIUMTEXT,
+                    create_time DATETIME(3)  NOT NULL,
+                    PRIMARY KEY (id),
+                    KEY idx_user_time (user_id, create_time)
+                ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 ROW_FORMAT = COMPRESSED
+                """.formatted(tableName);
+    }
+}
@@ -0,0 +1,23 @@
+package org.swy.zuelfinmind.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 向量化配置列表（finmind.embedding.*）
+ * profiles 里配好每种维度，shadow 里列出要“陪跑”的配置名：上传时一起写入，检索时一起查并记录耗时，不影响线上结果
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "finmind.embedding")
+public class EmbeddingProperties {
+
+    private List<EmbeddingProfile> profiles = new ArrayList<>();
+
+    private List<String> shadow = new ArrayList<>();
+}
@@ -0,0 +1,25 @@
+package org.swy.zuelfinmind.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 意图路由配置（finmind.intent.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "finmind.intent")
+public class IntentProperties {
+
+    public enum Mode {
+        OFF,      // 不分类，每轮都检索（老行为）
+        SHADOW,   // 分类但不生效：照常检索，拿检索结果给分类结果打分，先攒准确率
+        ENFORCE   // 分类生效：闲聊、只依赖历史的提问直接跳过检索
+    }
+
+    private Mode mode = Mode.SHADOW;
+
+    // 置信度达到多少才跳过检索；宁可多查一次，也不要漏掉该查的
+    private double confidenceThreshold = 0.75;
+}
@@ -1,11 +1,10 @@
 package org.swy.zuelfinmind.config;
 
-import io.pinecone.clients.Index;
-import io.pinecone.configs.PineconeConfig;
-import io.pinecone.configs.PineconeConnection;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.swy.zuelfinmind.service.PineconeIndexPool;
 
 @Configuration
 public class PcConfig {
@@ -13,10 +12,6 @@ public class PcConfig {
     @Value("${YOUR_EDB_KEY}")
     private String apiKey;
 
-    private final String indexName = "zuel-finmind-test";
-
-    private final String HOST = "zuel-finmind-test-w81fj87.svc.aped-4627-b74a.pinecone.io";
-
 //    @Bean
 //    public Pinecone pineconeClient() {
 //        // 初始化客户端
@@ -40,13 +35,12 @@ public class PcConfig {
 //        return pc;
 //    }
 
-    @Bean
-    public Index pineconeIndex() {
-        // 获取索引连接
-        PineconeConfig config = new PineconeConfig(apiKey);
-        config.setHost(HOST);
-        PineconeConnection connection = new PineconeConnection(config);
-
-        return new Index(config, connection, indexName);
+    /**
+     * 获取索引连接：不再是一条共享连接，而是按 finmind.pinecone.pool-size 开多条轮询使用
+     * host 和索引名也挪到了 PineconeProperties 里
+     */
+    @Bean(destroyMethod = "close")
+    public PineconeIndexPool pineconeIndexPool(PineconeProperties properties, MeterRegistry meterRegistry) {
+        return new PineconeIndexPool(apiKey, properties, meterRegistry);
     }
 }
@@ -0,0 +1,59 @@
+package org.swy.zuelfinmind.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pinecone 连接池配置（finmind.pinecone.*）
+ * 一条 gRPC 连接 + 一个 HTTP 客户端扛不住并发检索，按 CPU 核数开多条，轮询使用
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "finmind.pinecone")
+public class PineconeProperties {
+
+    private String host = "zuel-finmind-test-w81fj87.svc.aped-4627-b74a.pinecone.io";
+
+    private String indexName = "zuel-finmind-test";
+
+    // 开几条连接（每条是独立的 Index + gRPC Channel + HTTP 客户端），0 表示跟 CPU 核数一样
+    private int poolSize = 0;
+
+    // 异步检索线程数，0 表示连接数的 4 倍（检索是阻塞 IO，线程多一点没关系）
+    private int threads = 0;
+
+    // 检索线程池的排队上限，0 表示线程数的 4 倍；排满直接拒绝（按检索失败降级），不无限堆积
+    private int queueCapacity = 0;
+
+    // gRPC keep-alive：定期 ping，防止连接被负载均衡器悄悄断掉，下一次请求才发现要重连
+    // gRPC 服务端默认只允许 5 分钟 ping 一次，ping 太勤会收到 GOAWAY(too_many_pings) 被断开，最少 60 秒
+    private int keepAliveSeconds = 60;
+
+    private int keepAliveTimeoutSeconds = 10;
+
+    // 没有调用时也 ping：能让空闲连接一直保持热的，但更容易触发服务端的 ping 限制，默认关闭
+    private boolean keepAliveWithoutCalls = false;
+
+    // 单次调用的超时时间（调用方已经带了更短的 deadline 时以调用方为准）
+    // 同时也是 records 检索接口（HTTP）的读超时，超时后检索线程会被释放，不会一直阻塞
+    private long deadlineMillis = 5000;
+
+    // HTTP 建连超时
+    private long connectTimeoutMillis = 2000;
+
+    // HTTP 请求整体超时：上传一批 96 条要在服务端做向量化，比检索慢得多，单独放宽
+    private long upsertTimeoutMillis = 30000;
+
+    public int effectivePoolSize() {
+        return poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int effectiveThreads() {
+        return threads > 0 ? threads : effectivePoolSize() * 4;
+    }
+
+    public int effectiveQueueCapacity() {
+        return queueCapacity > 0 ? queueCapacity : effectiveThreads() * 4;
+    }
+}
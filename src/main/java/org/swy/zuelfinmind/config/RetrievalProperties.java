@@ -0,0 +1,40 @@
+package org.swy.zuelfinmind.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 检索链路的可调参数（finmind.retrieval.*）
+ * 默认值就是调好的线上值；改之前先用 RetrievalEvaluator 离线跑一遍，对比报告再上线
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "finmind.retrieval")
+public class RetrievalProperties {
+
+    // 向量检索召回条数
+    private int topK = 20;
+
+    // 向量相似度阈值：智谱 0.5，集成模型 0.8
+    private float searchThreshold = 0.8f;
+
+    // 重排序：最终得分 = 向量得分 * vectorWeight + 关键词得分 * keywordWeight
+    private double vectorWeight = 0.8;
+
+    private double keywordWeight = 0.2;
+
+    // 命中几个关键词算满分
+    private int keywordSaturation = 3;
+
+    // 重排序后的及格线：智谱 0.4，集成 0.65
+    private float rerankCutoff = 0.65f;
+
+    // 最多取几块资料喂给大模型
+    private int rerankLimit = 5;
+
+    // 切块大小和重叠
+    private int chunkSize = 300;
+
+    private int chunkOverlap = 50;
+}
@@ -0,0 +1,15 @@
+package org.swy.zuelfinmind.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * ⏰ 开启定时任务（历史归档、入库队列轮询；线程数见 spring.task.scheduling.pool.size）
+ * 单独放一个配置类，CDS 训练运行时可以用 finmind.scheduling.enabled=false 整个关掉
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "finmind.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
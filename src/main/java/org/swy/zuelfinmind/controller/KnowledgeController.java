@@ -1,11 +1,22 @@
 package org.swy.zuelfinmind.controller;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.swy.zuelfinmind.dto.HistoryPage;
+import org.swy.zuelfinmind.model.IngestionJob;
+import org.swy.zuelfinmind.service.ChatHistoryService;
+import org.swy.zuelfinmind.service.ChatStreamService;
 import org.swy.zuelfinmind.service.DeepSeekService;
+import org.swy.zuelfinmind.service.ingest.IngestionService;
 import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+
 @RestController
 @RequestMapping("/ai")
 // 允许跨域，防止某些浏览器报CORS错误
@@ -14,22 +25,65 @@ public class KnowledgeController {
 
     private final DeepSeekService deepSeekService;
 
-    public KnowledgeController(DeepSeekService deepSeekService) {
+    private final IngestionService ingestionService;
+
+    private final ChatStreamService chatStreamService;
+
+    private final ChatHistoryService chatHistoryService;
+
+    public KnowledgeController(DeepSeekService deepSeekService, IngestionService ingestionService,
+                               ChatStreamService chatStreamService, ChatHistoryService chatHistoryService) {
         this.deepSeekService = deepSeekService;
+        this.ingestionService = ingestionService;
+        this.chatStreamService = chatStreamService;
+        this.chatHistoryService = chatHistoryService;
     }
 
     // 上传接口：Postman选POST -> Body -> form-data -> key填“file”（类型选File）
+    // 只登记入库任务，马上返回 jobId；解析、切块、向量化由后台 worker 完成
     @PostMapping("/upload")
-    public String uploadFile(@RequestParam("file") MultipartFile file) {
-        return deepSeekService.uploadAndLearn(file);
+    public IngestionJob uploadFile(@RequestParam("file") MultipartFile file) throws IOException {
+        return ingestionService.submit(file);
+    }
+
+    // 查询入库进度：status 为 DONE 或 FAILED 时结束轮询
+    @GetMapping("/upload/{jobId}")
+    public ResponseEntity<IngestionJob> uploadStatus(@PathVariable("jobId") String jobId) {
+        IngestionJob job = ingestionService.getJob(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
     }
 
     // 1. 【新增】聊天接口 (修复 405 问题的关键)
     // 前端用的是 GET 请求，所以这里必须是 @GetMapping
     @GetMapping(value = "/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
-    public Flux<String> chat(@RequestParam("userId") String userId,
-                             @RequestParam("message") String message) {
-        // 调用 DeepSeekService 的 chat 方法
-        return deepSeekService.chat(userId, message);
+    // 2. 断线重连时前端带上 Last-Event-ID，从断点续传，不会重新调用大模型
+    public Flux<ServerSentEvent<String>> chat(@RequestParam("userId") String userId,
+                                              @RequestParam("message") String message,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // 生成在后台写入 Redis Stream，这里只负责读
+        return chatStreamService.chat(userId, message, lastEventId);
+    }
+
+    // 预取接口：前端在用户停止打字一小会儿后调用，提前准备检索结果，立刻返回
+    // 202 表示已开始预取，204 表示这次跳过了（草稿太短或上一个预取还没跑完）
+    @PostMapping("/prefetch")
+    public ResponseEntity<Void> prefetch(@RequestParam("userId") String userId,
+                                         @RequestParam("draft") String draft) {
+        return deepSeekService.prefetch(userId, draft)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.noContent().build();
+    }
+
+    // 3. 历史记录翻页：第一页不传 cursor，之后把返回的 nextCursor 原样传回来
+    @GetMapping("/history")
+    public HistoryPage history(@RequestParam("userId") String userId,
+                               @RequestParam(value = "cursor", required = false) String cursor,
+                               @RequestParam(value = "size", defaultValue = "20") int size) {
+        try {
+            return chatHistoryService.getHistoryPage(userId, cursor, size);
+        } catch (IllegalArgumentException e) {
+            // 游标被篡改或截断是调用方的问题，回 400 而不是 500
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
     }
 }
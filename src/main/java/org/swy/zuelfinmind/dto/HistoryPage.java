@@ -0,0 +1,18 @@
+package org.swy.zuelfinmind.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.swy.zuelfinmind.entity.ChatRecord;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class HistoryPage {
+
+    // 本页记录（按时间倒序，最新的在前）
+    private List<ChatRecord> records;
+
+    // 下一页的游标，原样传回 cursor 参数即可；为 null 说明已经到底了
+    private String nextCursor;
+}
@@ -0,0 +1,148 @@
+package org.swy.zuelfinmind.eval;
+
+import ai.z.openapi.ZhipuAiClient;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.strategy.impl.InMemoryVectorStore;
+import org.swy.zuelfinmind.service.strategy.impl.ZhipuEmbedder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 📏 向量维度离线评测：同一份语料分别用 256/512/1024/2048 维向量化，比较召回率、检索耗时和内存
+ * 召回率按查询集里标注的 relevant 算（recall@k / MRR，和 RetrievalEvaluator 口径一致）；
+ * 另外给出和最高维度 top-k 的重合度，看降维丢了多少排序信息；选“达标且最便宜”的维度
+ *
+ * 运行（需要环境变量 YOUR_EB_KEY）：
+ *   mvn -q compile exec:java -Dexec.mainClass=org.swy.zuelfinmind.eval.EmbeddingBenchmark \
+ *       -Dexec.args="--corpus=knowledge_base.json --queries=eval/queries.jsonl --k=5"
+ */
+public class EmbeddingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = EvalSupport.parseArgs(args);
+        Path corpusPath = Path.of(options.getOrDefault("corpus", "knowledge_base.json"));
+        Path queriesPath = Path.of(options.getOrDefault("queries", "eval/queries.jsonl"));
+        Path outDir = Path.of(options.getOrDefault("out", "target/eval"));
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+        int repeat = Integer.parseInt(options.getOrDefault("repeat", "50")); // 每个查询重复检索几次，测耗时用
+        int[] dims = Arrays.stream(options.getOrDefault("dims", "256,512,1024,2048").split(","))
+                .mapToInt(d -> Integer.parseInt(d.trim()))
+                .sorted()
+                .toArray();
+
+        ZhipuAiClient client = ZhipuAiClient.builder().ofZHIPU()
+                .apiKey(System.getenv("YOUR_EB_KEY"))
+                .networkConfig(30, 60, 60, 200, TimeUnit.SECONDS)
+                .build();
+
+        List<String> corpus = EvalSupport.loadCorpus(corpusPath);
+        List<EvalSupport.EvalQuery> queries = EvalSupport.loadQueries(queriesPath);
+        System.out.printf("📚 语料 %d 条，查询 %d 条，维度 %s%n", corpus.size(), queries.size(), Arrays.toString(dims));
+
+        // 每个维度：每个查询的 top-k 文本
+        Map<Integer, List<List<String>>> topKByDims = new LinkedHashMap<>();
+        List<List<String>> rows = new ArrayList<>();
+
+        for (int d : dims) {
+            EmbeddingProfile profile = EmbeddingProfile.zhipu(d);
+            ZhipuEmbedder embedder = new ZhipuEmbedder(client, profile);
+            // 阈值给 -1：评测要看完整排序，不做过滤
+            InMemoryVectorStore store = new InMemoryVectorStore(embedder::embed, -1f, new RetrievalProperties());
+
+            List<Long> embedMillis = new ArrayList<>();
+            for (String text : corpus) {
+                long start = System.nanoTime();
+                List<Float> vector = embedder.embed(text);
+                embedMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                store.add(text, corpusPath.getFileName().toString(), vector);
+            }
+
+            List<List<String>> topK = new ArrayList<>();
+            List<Double> searchMicros = new ArrayList<>();
+            double recallSum = 0, mrrSum = 0;
+            int labeled = 0;
+            for (EvalSupport.EvalQuery query : queries) {
+                List<Float> queryVector = embedder.embed(query.query());
+                List<String> texts = List.of();
+                if (queryVector != null) {
+                    List<VectorSearchResult> results = List.of();
+                    for (int i = 0; i < repeat; i++) {
+                        long start = System.nanoTime();
+                        results = store.searchByVector(queryVector, k);
+                        searchMicros.add((System.nanoTime() - start) / 1000.0);
+                    }
+                    texts = results.stream().map(VectorSearchResult::getText).toList();
+                }
+                topK.add(texts);
+
+                // 没有标注的查询（闲聊、知识库外的问题）不计入召回率
+                if (!query.relevant().isEmpty()) {
+                    recallSum += EvalSupport.recall(texts, query.relevant());
+                    mrrSum += EvalSupport.reciprocalRank(texts, query.relevant());
+                    labeled++;
+                }
+            }
+            topKByDims.put(d, topK);
+
+            rows.add(EvalSupport.row(
+                    profile.getName(),
+                    d,
+                    store.size(),
+                    fmt(labeled == 0 ? 0 : recallSum / labeled),
+                    fmt(labeled == 0 ? 0 : mrrSum / labeled),
+                    "", // 重合度在所有维度跑完后再回填
+                    fmt(EvalSupport.percentile(embedMillis, 50)),
+                    fmt(EvalSupport.percentile(searchMicros, 50)),
+                    fmt(EvalSupport.percentile(searchMicros, 99)),
+                    store.vectorBytes()
+            ));
+        }
+
+        // 以最高维度为基准回填 top-k 重合度
+        List<List<String>> reference = topKByDims.get(dims[dims.length - 1]);
+        for (int i = 0; i < dims.length; i++) {
+            List<String> row = new ArrayList<>(rows.get(i));
+            row.set(5, fmt(overlapWith(topKByDims.get(dims[i]), reference)));
+            rows.set(i, row);
+        }
+
+        List<String> header = List.of("profile", "dims", "corpus", "recall@" + k, "mrr", "overlap@" + k, "embed_p50_ms",
+                "search_p50_us", "search_p99_us", "vector_bytes");
+        Path report = EvalSupport.writeReport(outDir, "embedding-benchmark.tsv", header, rows);
+
+        System.out.println(String.join("\t", header));
+        rows.forEach(row -> System.out.println(String.join("\t", row)));
+        System.out.println("📝 报告已写入 " + report);
+    }
+
+    /**
+     * 每个查询：基准 top-k 中有多少也出现在候选 top-k 里，再对所有查询取平均
+     */
+    private static double overlapWith(List<List<String>> candidate, List<List<String>> reference) {
+        double sum = 0;
+        int counted = 0;
+        for (int q = 0; q < reference.size(); q++) {
+            List<String> expected = reference.get(q);
+            if (expected.isEmpty()) continue;
+            Set<String> got = new HashSet<>(candidate.get(q));
+            sum += expected.stream().filter(got::contains).count() / (double) expected.size();
+            counted++;
+        }
+        return counted == 0 ? 0 : sum / counted;
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,166 @@
+package org.swy.zuelfinmind.eval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 离线评测的公共工具：读参数、读语料和查询集、算检索指标和分位数、写报告
+ */
+public final class EvalSupport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private EvalSupport() {}
+
+    /**
+     * 一条评测查询
+     * @param relevant 标注的相关文本（语料中包含这段文字的块都算相关），没标注时为空
+     */
+    public record EvalQuery(String id, String query, List<String> relevant) {}
+
+    /**
+     * 解析 --key=value 形式的参数
+     */
+    public static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * 读语料：兼容 knowledge_base.json（{文本: 向量}）和纯字符串数组两种格式
+     */
+    public static List<String> loadCorpus(Path path) throws IOException {
+        JsonNode root = MAPPER.readTree(path.toFile());
+        List<String> corpus = new ArrayList<>();
+        if (root.isObject()) {
+            Iterator<String> names = root.fieldNames();
+            names.forEachRemaining(corpus::add);
+        } else {
+            root.forEach(node -> corpus.add(node.asText()));
+        }
+        return corpus;
+    }
+
+    /**
+     * 读查询集（JSONL，每行一个 {"query_id":..,"query":..,"relevant":[..]}）
+     */
+    public static List<EvalQuery> loadQueries(Path path) throws IOException {
+        List<EvalQuery> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            JsonNode node = MAPPER.readTree(line);
+            List<String> relevant = new ArrayList<>();
+            node.path("relevant").forEach(r -> relevant.add(r.asText()));
+            queries.add(new EvalQuery(node.path("query_id").asText(), node.path("query").asText(), relevant));
+        }
+        return queries;
+    }
+
+    /**
+     * 块里包含标注文本，或者标注文本包含整个块（块比标注短时），都算命中
+     */
+    public static boolean matches(String chunk, String relevant) {
+        return chunk.contains(relevant) || relevant.contains(chunk);
+    }
+
+    /**
+     * recall：标注的相关资料里，有多少被结果覆盖
+     */
+    public static double recall(List<String> results, List<String> relevant) {
+        long found = relevant.stream()
+                .filter(r -> results.stream().anyMatch(chunk -> matches(chunk, r)))
+                .count();
+        return (double) found / relevant.size();
+    }
+
+    /**
+     * 第一条相关结果排名的倒数，没有相关结果为 0
+     */
+    public static double reciprocalRank(List<String> results, List<String> relevant) {
+        for (int i = 0; i < results.size(); i++) {
+            String chunk = results.get(i);
+            if (relevant.stream().anyMatch(r -> matches(chunk, r))) {
+                return 1.0 / (i + 1);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * nDCG@k（二元相关度）：理想情况是前 min(相关数, k) 位全部相关
+     */
+    public static double ndcg(List<String> results, List<String> relevant, int k) {
+        double dcg = 0;
+        for (int i = 0; i < Math.min(k, results.size()); i++) {
+            String chunk = results.get(i);
+            if (relevant.stream().anyMatch(r -> matches(chunk, r))) {
+                dcg += 1.0 / (Math.log(i + 2) / Math.log(2));
+            }
+        }
+        double idcg = 0;
+        for (int i = 0; i < Math.min(k, relevant.size()); i++) {
+            idcg += 1.0 / (Math.log(i + 2) / Math.log(2));
+        }
+        return idcg == 0 ? 0 : dcg / idcg;
+    }
+
+    /**
+     * 粗估 Token 数：中文一个字约一个 Token，英文/数字约 4 个字符一个 Token
+     */
+    public static int estimateTokens(String text) {
+        int cjk = 0, other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else if (!Character.isWhitespace(c)) {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 分位数（最近秩法），p 取 0~100
+     */
+    public static double percentile(List<? extends Number> values, double p) {
+        if (values.isEmpty()) return 0;
+        double[] sorted = values.stream().mapToDouble(Number::doubleValue).sorted().toArray();
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+    }
+
+    /**
+     * 写 TSV 报告：固定列顺序和小数位，两次运行的结果可以直接 diff
+     */
+    public static Path writeReport(Path dir, String fileName, List<String> header, List<List<String>> rows) throws IOException {
+        Files.createDirectories(dir);
+        List<String> lines = new ArrayList<>();
+        lines.add(String.join("\t", header));
+        rows.forEach(row -> lines.add(String.join("\t", row)));
+        Path file = dir.resolve(fileName);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    public static List<String> row(Object... cells) {
+        return Arrays.stream(cells).map(String::valueOf).toList();
+    }
+}
@@ -0,0 +1,216 @@
+package org.swy.zuelfinmind.eval;
+
+import ai.z.openapi.ZhipuAiClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.swy.zuelfinmind.config.IntentProperties;
+import org.swy.zuelfinmind.config.PineconeProperties;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.DeepSeekService;
+import org.swy.zuelfinmind.service.IntentRouter;
+import org.swy.zuelfinmind.service.PineconeIndexPool;
+import org.swy.zuelfinmind.service.Reranker;
+import org.swy.zuelfinmind.service.strategy.VectorStoreStrategy;
+import org.swy.zuelfinmind.service.strategy.impl.InMemoryVectorStore;
+import org.swy.zuelfinmind.service.strategy.impl.PineconeVectorStore;
+import org.swy.zuelfinmind.service.strategy.impl.ZhipuEmbedder;
+import org.swy.zuelfinmind.utils.DocumentUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 🧪 检索链路离线评测：查询集 -> 向量检索 -> 重排序 -> 拼提示词，逐条打分
+ * 改阈值、权重、切块参数之前先跑一遍，改完再跑一遍，两份报告 diff 一下就知道是变好还是变坏
+ *
+ * 指标：recall@k / MRR / nDCG@k（按重排序后的结果算），检索召回率（重排序前），
+ *      检索和重排序两个阶段的 p50/p99 耗时，提示词 Token 数（估算）
+ *
+ * 运行：
+ *   mvn -q compile exec:java -Dexec.mainClass=org.swy.zuelfinmind.eval.RetrievalEvaluator \
+ *       -Dexec.args="--label=baseline --strategy=memory --rerank-cutoff=0.4"
+ *
+ * --strategy=memory   语料用智谱向量化后放内存（需要 YOUR_EB_KEY），参数包括切块全部可调；
+ *                     阈值默认按智谱来（--search-threshold=0.5 --rerank-cutoff=0.4）
+ * --strategy=pinecone 直接查线上索引（需要 YOUR_EDB_KEY；--host/--index 不传就用 PineconeProperties 的默认值），切块参数以入库时为准
+ * --intent-threshold 意图路由的置信度阈值，报告里给出每条查询的分类结果和误跳率
+ */
+public class RetrievalEvaluator {
+
+    // 智谱向量的分数分布和集成模型不一样，沿用 ZhipuVectorStore 的阈值（RetrievalProperties 的默认值是给集成模型的）
+    private static final float ZHIPU_SEARCH_THRESHOLD = 0.5f;
+    private static final float ZHIPU_RERANK_CUTOFF = 0.4f;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = EvalSupport.parseArgs(args);
+        Path corpusPath = Path.of(options.getOrDefault("corpus", "knowledge_base.json"));
+        Path queriesPath = Path.of(options.getOrDefault("queries", "eval/queries.jsonl"));
+        Path outDir = Path.of(options.getOrDefault("out", "target/eval"));
+        String label = options.getOrDefault("label", "baseline");
+        String strategyName = options.getOrDefault("strategy", "memory");
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+
+        // 线上默认参数，命令行可以逐个覆盖
+        RetrievalProperties properties = new RetrievalProperties();
+        if ("memory".equals(strategyName)) {
+            properties.setSearchThreshold(ZHIPU_SEARCH_THRESHOLD);
+            properties.setRerankCutoff(ZHIPU_RERANK_CUTOFF);
+        }
+        if (options.containsKey("top-k")) properties.setTopK(Integer.parseInt(options.get("top-k")));
+        if (options.containsKey("search-threshold")) properties.setSearchThreshold(Float.parseFloat(options.get("search-threshold")));
+        if (options.containsKey("vector-weight")) properties.setVectorWeight(Double.parseDouble(options.get("vector-weight")));
+        if (options.containsKey("keyword-weight")) properties.setKeywordWeight(Double.parseDouble(options.get("keyword-weight")));
+        if (options.containsKey("rerank-cutoff")) properties.setRerankCutoff(Float.parseFloat(options.get("rerank-cutoff")));
+        if (options.containsKey("rerank-limit")) properties.setRerankLimit(Integer.parseInt(options.get("rerank-limit")));
+        if (options.containsKey("chunk-size")) properties.setChunkSize(Integer.parseInt(options.get("chunk-size")));
+        if (options.containsKey("chunk-overlap")) properties.setChunkOverlap(Integer.parseInt(options.get("chunk-overlap")));
+
+        VectorStoreStrategy strategy = switch (strategyName) {
+            case "memory" -> memoryStore(corpusPath, properties, options);
+            case "pinecone" -> pineconeStore(properties, options);
+            default -> throw new IllegalArgumentException("未知的 strategy: " + strategyName);
+        };
+        Reranker reranker = new Reranker(properties);
+        IntentProperties intentProperties = new IntentProperties();
+        if (options.containsKey("intent-threshold")) intentProperties.setConfidenceThreshold(Double.parseDouble(options.get("intent-threshold")));
+        IntentRouter intentRouter = new IntentRouter(intentProperties, new SimpleMeterRegistry());
+        List<EvalSupport.EvalQuery> queries = EvalSupport.loadQueries(queriesPath);
+        queries.sort(Comparator.comparing(EvalSupport.EvalQuery::id));
+
+        List<List<String>> rows = new ArrayList<>();
+        List<Double> searchMillis = new ArrayList<>();
+        List<Double> rerankMillis = new ArrayList<>();
+        List<Integer> promptTokens = new ArrayList<>();
+        double recallSum = 0, mrrSum = 0, ndcgSum = 0, searchRecallSum = 0;
+        int labeled = 0, noisyNegatives = 0, negatives = 0;
+        // 意图路由：有标注资料的查询应该检索，没有的应该跳过
+        int intentCorrect = 0, intentFalseSkips = 0;
+
+        for (EvalSupport.EvalQuery query : queries) {
+            long t0 = System.nanoTime();
+            List<VectorSearchResult> candidates = strategy.search(query.query());
+            long t1 = System.nanoTime();
+            List<String> chunks = reranker.rerank(candidates, query.query(), false);
+            long t2 = System.nanoTime();
+
+            IntentRouter.Decision decision = intentRouter.classify(query.query());
+            boolean shouldSkip = query.relevant().isEmpty();
+            if (decision.skipRetrieval() == shouldSkip) intentCorrect++;
+            if (decision.skipRetrieval() && !shouldSkip) intentFalseSkips++;
+
+            String prompt = DeepSeekService.SYSTEM_PROMPT
+                    + DeepSeekService.buildUserMessage(String.join("\n\n", chunks), query.query());
+            int tokens = EvalSupport.estimateTokens(prompt);
+
+            searchMillis.add((t1 - t0) / 1e6);
+            rerankMillis.add((t2 - t1) / 1e6);
+            promptTokens.add(tokens);
+
+            String recall = "", mrr = "", ndcg = "", searchRecall = "";
+            if (query.relevant().isEmpty()) {
+                // 没有标注相关资料的查询（闲聊等），检索到任何东西都算噪音
+                negatives++;
+                if (!chunks.isEmpty()) noisyNegatives++;
+            } else {
+                labeled++;
+                List<String> topK = chunks.subList(0, Math.min(k, chunks.size()));
+                double r = EvalSupport.recall(topK, query.relevant());
+                double m = EvalSupport.reciprocalRank(topK, query.relevant());
+                double n = EvalSupport.ndcg(topK, query.relevant(), k);
+                double s = EvalSupport.recall(candidates.stream().map(VectorSearchResult::getText).toList(), query.relevant());
+                recallSum += r;
+                mrrSum += m;
+                ndcgSum += n;
+                searchRecallSum += s;
+                recall = fmt(r);
+                mrr = fmt(m);
+                ndcg = fmt(n);
+                searchRecall = fmt(s);
+            }
+
+            rows.add(EvalSupport.row(query.id(), candidates.size(), chunks.size(), searchRecall, recall, mrr, ndcg, tokens,
+                    decision.intent() + (decision.skipRetrieval() ? "/skip" : "/retrieve") + "@" + fmt(decision.confidence())));
+        }
+
+        List<String> header = List.of("query_id", "candidates", "chunks", "search_recall",
+                "recall@" + k, "mrr", "ndcg@" + k, "prompt_tokens", "intent");
+        Path detail = EvalSupport.writeReport(outDir, "retrieval-" + label + ".tsv", header, rows);
+
+        // 汇总报告：参数 + 指标，一行一个，方便 diff
+        List<List<String>> summary = new ArrayList<>();
+        summary.add(EvalSupport.row("strategy", strategyName));
+        summary.add(EvalSupport.row("config", properties));
+        summary.add(EvalSupport.row("queries", queries.size()));
+        summary.add(EvalSupport.row("labeled", labeled));
+        summary.add(EvalSupport.row("search_recall@" + properties.getTopK(), fmt(labeled == 0 ? 0 : searchRecallSum / labeled)));
+        summary.add(EvalSupport.row("recall@" + k, fmt(labeled == 0 ? 0 : recallSum / labeled)));
+        summary.add(EvalSupport.row("mrr", fmt(labeled == 0 ? 0 : mrrSum / labeled)));
+        summary.add(EvalSupport.row("ndcg@" + k, fmt(labeled == 0 ? 0 : ndcgSum / labeled)));
+        summary.add(EvalSupport.row("negative_noise_rate", fmt(negatives == 0 ? 0 : (double) noisyNegatives / negatives)));
+        summary.add(EvalSupport.row("intent_threshold", fmt(intentProperties.getConfidenceThreshold())));
+        summary.add(EvalSupport.row("intent_accuracy", fmt(queries.isEmpty() ? 0 : (double) intentCorrect / queries.size())));
+        summary.add(EvalSupport.row("intent_false_skip_rate", fmt(labeled == 0 ? 0 : (double) intentFalseSkips / labeled)));
+        summary.add(EvalSupport.row("search_p50_ms", fmt(EvalSupport.percentile(searchMillis, 50))));
+        summary.add(EvalSupport.row("search_p99_ms", fmt(EvalSupport.percentile(searchMillis, 99))));
+        summary.add(EvalSupport.row("rerank_p50_ms", fmt(EvalSupport.percentile(rerankMillis, 50))));
+        summary.add(EvalSupport.row("rerank_p99_ms", fmt(EvalSupport.percentile(rerankMillis, 99))));
+        summary.add(EvalSupport.row("prompt_tokens_p50", fmt(EvalSupport.percentile(promptTokens, 50))));
+        summary.add(EvalSupport.row("prompt_tokens_p99", fmt(EvalSupport.percentile(promptTokens, 99))));
+        Path summaryFile = EvalSupport.writeReport(outDir, "retrieval-" + label + "-summary.tsv",
+                List.of("metric", "value"), summary);
+
+        summary.forEach(row -> System.out.println(String.join("\t", row)));
+        System.out.println("📝 报告已写入 " + detail + " 和 " + summaryFile);
+    }
+
+    /**
+     * 语料切块后用智谱向量化，放进内存向量库
+     */
+    private static VectorStoreStrategy memoryStore(Path corpusPath, RetrievalProperties properties,
+                                                   Map<String, String> options) throws Exception {
+        ZhipuAiClient client = ZhipuAiClient.builder().ofZHIPU()
+                .apiKey(System.getenv("YOUR_EB_KEY"))
+                .networkConfig(30, 60, 60, 200, TimeUnit.SECONDS)
+                .build();
+        int dims = Integer.parseInt(options.getOrDefault("dims", "1024"));
+        ZhipuEmbedder embedder = new ZhipuEmbedder(client, EmbeddingProfile.zhipu(dims));
+        InMemoryVectorStore store = new InMemoryVectorStore(embedder::embed, properties.getSearchThreshold(), properties);
+
+        String source = corpusPath.getFileName().toString();
+        for (String document : EvalSupport.loadCorpus(corpusPath)) {
+            for (String chunk : DocumentUtils.splitText(document, properties.getChunkSize(), properties.getChunkOverlap())) {
+                store.add(chunk, source, embedder.embed(chunk));
+            }
+        }
+        return store;
+    }
+
+    /**
+     * 直接查线上 Pinecone 集成索引（和 PcConfig 一样的连接方式；评测是串行的，一条连接就够）
+     */
+    private static VectorStoreStrategy pineconeStore(RetrievalProperties properties, Map<String, String> options) {
+        String apiKey = System.getenv("YOUR_EDB_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalArgumentException("--strategy=pinecone 需要环境变量 YOUR_EDB_KEY；"
+                    + "可选 --host=<索引 host> --index=<索引名>，默认连 PineconeProperties 里配置的测试索引");
+        }
+        // 没传的参数沿用线上默认配置，不要留 null 给客户端
+        PineconeProperties pinecone = new PineconeProperties();
+        if (options.containsKey("host")) pinecone.setHost(options.get("host"));
+        if (options.containsKey("index")) pinecone.setIndexName(options.get("index"));
+        pinecone.setPoolSize(1);
+        PineconeIndexPool pool = new PineconeIndexPool(apiKey, pinecone, new SimpleMeterRegistry());
+        return new PineconeVectorStore(null, pool, new ObjectMapper(), properties);
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,30 @@
+package org.swy.zuelfinmind.model;
+
+import lombok.Data;
+
+/**
+ * 向量化配置：同一个模型可以用不同维度跑（embedding-3 支持 256/512/1024/2048）
+ * 维度越低，存储和检索越省，但召回可能下降，用 EmbeddingBenchmark 实测后再选
+ */
+@Data
+public class EmbeddingProfile {
+
+    private String name; // 配置名，例如 zhipu-512
+
+    private String model = "embedding-3"; // 智谱向量模型
+
+    private int dimensions = 1024; // 向量维度
+
+    private String host; // Pinecone 索引地址（一个索引只能有一种维度，所以每个配置单独一个索引）
+
+    private String indexName;
+
+    private String namespace = "zuel-namespace";
+
+    public static EmbeddingProfile zhipu(int dimensions) {
+        EmbeddingProfile profile = new EmbeddingProfile();
+        profile.setName("zhipu-" + dimensions);
+        profile.setDimensions(dimensions);
+        return profile;
+    }
+}
@@ -0,0 +1,20 @@
+package org.swy.zuelfinmind.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * 数据胶囊（DTO）
+ * 用来把一问一答打包，方便存Redis
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HistoryNode {
+    public String question;
+    public String answer;
+
+    // Jackson需要无参构造
+    public HistoryNode() {}
+    public HistoryNode(String question, String answer) {
+        this.question = question;
+        this.answer = answer;
+    }
+}
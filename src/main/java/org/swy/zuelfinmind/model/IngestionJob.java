@@ -0,0 +1,28 @@
+package org.swy.zuelfinmind.model;
+
+import lombok.Data;
+
+/**
+ * 文档入库任务：上传接口只负责登记任务，解析、切块、向量化由后台 worker 完成
+ * 状态存在 Redis Hash 里，任何实例都能查到进度
+ */
+@Data
+public class IngestionJob {
+
+    public enum Status {
+        QUEUED,    // 排队中
+        RUNNING,   // 正在入库
+        RETRYING,  // 失败了，等可见性超时后重新投递
+        DONE,      // 完成
+        FAILED     // 重试次数用完，放弃
+    }
+
+    private String jobId;
+    private String source;   // 文件名，同时也是向量的来源标识
+    private Status status;
+    private int progress;    // 0-100
+    private int attempts;    // 已经尝试了几次
+    private String message;  // 成功消息或最后一次的错误
+    private long createTime;
+    private long updateTime;
+}
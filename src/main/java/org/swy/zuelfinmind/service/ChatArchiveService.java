@@ -0,0 +1,147 @@
+package org.swy.zuelfinmind.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.swy.zuelfinmind.config.ChatSchemaInitializer;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 🧊 冷热分离：把超过保留期的对话从热表搬到按月分的压缩冷表
+ * 热表只保留最近的数据，历史查询的索引一直很小
+ */
+@Service
+public class ChatArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatArchiveService.class);
+
+    private static final String ARCHIVE_TABLE_PREFIX = "chat_record_archive_";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // 多实例部署时只让一个实例搬数据
+    private static final String LOCK_KEY = "finmind:history:archive:lock";
+    private static final Duration LOCK_TTL = Duration.ofHours(1);
+
+    // 每批搬多少行，控制单个事务的大小
+    private static final int BATCH_SIZE = 500;
+
+    @Value("${finmind.history.retention-days:90}")
+    private int retentionDays;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final UserHistoryFilter userHistoryFilter;
+
+    public ChatArchiveService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              RedisTemplate<String, String> redisTemplate, UserHistoryFilter userHistoryFilter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.redisTemplate = redisTemplate;
+        this.userHistoryFilter = userHistoryFilter;
+    }
+
+    /**
+     * 定时归档（默认每天凌晨 3:30）
+     */
+    @Scheduled(cron = "${finmind.history.archive-cron:0 30 3 * * ?}")
+    public void archive() {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", LOCK_TTL);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("🧊 其他实例正在归档，跳过");
+            return;
+        }
+        try {
+            int moved = archiveOlderThan(LocalDateTime.now().minusDays(retentionDays));
+            log.info("🧊 归档完成，共搬走 {} 条对话", moved);
+            // 整个被搬走的用户在热表里已经没有记录了，不重建的话过滤器会一直把他们判成“可能有”；
+            // 位图因为写失败或参数变化被停用时也顺手重建
+            if (moved > 0 || userHistoryFilter.needsRebuild()) {
+                userHistoryFilter.rebuildIfIdle();
+            }
+        } catch (Exception e) {
+            log.error("❌ 归档失败", e);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    /**
+     * 按主键顺序扫描热表（自增 id 和时间同向，走主键范围扫描，不需要额外的时间索引）
+     * 遇到第一条没过期的就停
+     */
+    public int archiveOlderThan(LocalDateTime cutoff) {
+        int moved = 0;
+        long lastId = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, create_time FROM " + ChatSchemaInitializer.HOT_TABLE
+                            + " WHERE id > ? ORDER BY id LIMIT ?", lastId, BATCH_SIZE);
+            if (rows.isEmpty()) {
+                return moved;
+            }
+
+            // 按月份分组，过期的搬走
+            Map<String, List<Long>> byMonth = new TreeMap<>();
+            boolean reachedHot = false;
+            for (Map<String, Object> row : rows) {
+                // 新版 MySQL 驱动返回 LocalDateTime，老版本返回 Timestamp
+                Object time = row.get("create_time");
+                LocalDateTime createTime = time instanceof Timestamp ts ? ts.toLocalDateTime() : (LocalDateTime) time;
+                if (!createTime.isBefore(cutoff)) {
+                    reachedHot = true;
+                    break;
+                }
+                long id = ((Number) row.get("id")).longValue();
+                byMonth.computeIfAbsent(ARCHIVE_TABLE_PREFIX + createTime.format(MONTH), k -> new ArrayList<>()).add(id);
+                lastId = id;
+            }
+
+            for (Map.Entry<String, List<Long>> entry : byMonth.entrySet()) {
+                moved += moveBatch(entry.getKey(), entry.getValue());
+            }
+
+            if (reachedHot || rows.size() < BATCH_SIZE) {
+                return moved;
+            }
+        }
+    }
+
+    /**
+     * 先复制再删除，放在同一个事务里，中途失败不会丢数据也不会重复
+     */
+    private int moveBatch(String archiveTable, List<Long> ids) {
+        jdbcTemplate.execute(ChatSchemaInitializer.archiveTableDdl(archiveTable));
+
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] args = ids.toArray();
+
+        Integer deleted = transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT IGNORE INTO " + archiveTable
+                    + " (id, user_id, question, answer, create_time)"
+                    + " SELECT id, user_id, question, answer, create_time FROM " + ChatSchemaInitializer.HOT_TABLE
+                    + " WHERE id IN (" + placeholders + ")", args);
+            return jdbcTemplate.update("DELETE FROM " + ChatSchemaInitializer.HOT_TABLE
+                    + " WHERE id IN (" + placeholders + ")", args);
+        });
+        log.info("🧊 {} <- {} 条", archiveTable, deleted);
+        return deleted == null ? 0 : deleted;
+    }
+}
@@ -1,8 +1,6 @@
 package org.swy.zuelfinmind.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.AssistantMessage;
@@ -10,10 +8,16 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.swy.zuelfinmind.dto.HistoryPage;
 import org.swy.zuelfinmind.entity.ChatRecord;
 import org.swy.zuelfinmind.mapper.ChatRecordMapper;
+import org.swy.zuelfinmind.model.HistoryNode;
+import org.swy.zuelfinmind.service.codec.HistoryCodecs;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,35 +32,30 @@ public class ChatHistoryService {
     // 限制历史上下文轮数（3轮 = 6条消息），避免Token爆炸
     private static final int MAX_HISTORY_ROUNDS = 3;
 
-    // 注入Jackson用于把对象转成JSON字符串
-    private final ObjectMapper objectMapper;
+    // 历史翻页每页最多多少条
+    private static final int MAX_PAGE_SIZE = 50;
 
-    // 建议使用String， String泛型，最稳健
-    private final RedisTemplate<String, String> redisTemplate;
+    // 游标明文：{createTime}_{id}，例如 2026-01-01T10:00:00.123_42，对外再做一层 Base64 URL 编码
+    // 前端只管原样传回，不依赖里面的格式，以后换排序键也不影响接口
+    private static final String CURSOR_SEPARATOR = "_";
+
+    // 历史记录编解码（Smile 二进制 + 长文本压缩，兼容老的 JSON 数据）
+    private final HistoryCodecs historyCodecs;
+
+    // Value 存的是编码后的二进制，用 byte[] 泛型
+    private final RedisTemplate<String, byte[]> redisTemplate;
 
     private final ChatRecordMapper chatRecordMapper;
 
-    public ChatHistoryService(ObjectMapper objectMapper, RedisTemplate<String, String> redisTemplate, ChatRecordMapper chatRecordMapper) {
-        this.objectMapper = objectMapper;
+    // 确定没有历史的用户（布隆过滤器 + 空结果缓存）不用查库
+    private final UserHistoryFilter userHistoryFilter;
+
+    public ChatHistoryService(HistoryCodecs historyCodecs, RedisTemplate<String, byte[]> redisTemplate,
+                              ChatRecordMapper chatRecordMapper, UserHistoryFilter userHistoryFilter) {
+        this.historyCodecs = historyCodecs;
         this.redisTemplate = redisTemplate;
         this.chatRecordMapper = chatRecordMapper;
-    }
-
-    /**
-     * 内部类：数据胶囊（DTO）
-     * 用来把一问一答打包成JSON,方便存Redis
-     */
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    static class HistoryNode {
-        public String question;
-        public String answer;
-
-        // Jackson需要无参构造
-        public HistoryNode() {}
-        public HistoryNode(String question, String answer) {
-            this.question = question;
-            this.answer = answer;
-        }
+        this.userHistoryFilter = userHistoryFilter;
     }
 
     /**
@@ -72,15 +71,15 @@ public class ChatHistoryService {
         // 1.⚡ 先查 Redis (内存)
         try {
             // 获取列表所有内容（0 到 -1）
-            List<String> cachedJsonList = redisTemplate.opsForList().range(key, 0, -1);
+            List<byte[]> cachedJsonList = redisTemplate.opsForList().range(key, 0, -1);
 
             if (cachedJsonList != null && !cachedJsonList.isEmpty()) {
 //                log.info("✅ Redis 缓存命中: User [{}]", userId);
                 // ---> 这里就是【命中】！！！ <---
                 System.out.println("✅ [调试] Redis 命中！直接返回内存数据。条数：" + cachedJsonList.size());
-                for (String json : cachedJsonList) {
-                    // JSON 反序列化 -> HistoryNode对象
-                    HistoryNode node = objectMapper.readValue(json, HistoryNode.class);
+                for (byte[] data : cachedJsonList) {
+                    // 反序列化 -> HistoryNode对象（按第一个字节自动识别新旧格式）
+                    HistoryNode node = historyCodecs.decode(data);
                     // 转成Spring AI的Message对象
                     messages.add(new UserMessage(node.question));
                     messages.add(new AssistantMessage(node.answer));
@@ -93,21 +92,22 @@ public class ChatHistoryService {
             // 不要抛出异常，继续走下面的数据库流程作为兜底
         }
 
+        // 🌸 新用户、不活跃用户：Redis 里本来就是空的，能确定库里也没有就不查了
+        UserHistoryFilter.Lookup lookup = userHistoryFilter.lookup(userId);
+        if (lookup == UserHistoryFilter.Lookup.EMPTY) {
+            System.out.println("🌸 [调试] 确定没有历史记录，跳过数据库");
+            return messages;
+        }
+
         // 2.🐢 Redis没命中，查 MySQL (数据库兜底)
 //        log.info("🐢 Redis 未命中，查询 MySQL: User [{}]", userId);
         System.out.println("🐢 [调试] Redis 未命中 (为空)，准备去查数据库...");
         // ...此处保留原来DB逻辑...
-        // 1.MyBatis-Plus查询构造器
-        var query = new QueryWrapper<ChatRecord>();
-        query.eq("user_id", userId) // 查当前客户
-                .orderByDesc("create_time") // 按时间倒序（为了取最新的）
-                .last("limit " + MAX_HISTORY_ROUNDS); // 只取最近3条，防止上下文爆炸
+        List<ChatRecord> records = loadRecent(userId);
 
-        // 2.执行查询
-        List<ChatRecord> records = chatRecordMapper.selectList(query);
-
-        // 数据库没数据，就是真没了
+        // 数据库没数据，就是真没了（记一笔空结果缓存，下一条消息不用再查）
         if (records.isEmpty()) {
+            userHistoryFilter.markEmpty(userId, lookup);
             return messages;
         }
 
@@ -120,10 +120,10 @@ public class ChatHistoryService {
             for (ChatRecord record : records) {
                 // 转成Node
                 HistoryNode node = new HistoryNode(record.getQuestion(), record.getAnswer());
-                // 转成JSON
-                String json = objectMapper.writeValueAsString(node);
+                // 编码
+                byte[] data = historyCodecs.encode(node);
                 // 推入Redis
-                redisTemplate.opsForList().rightPush(key, json);
+                redisTemplate.opsForList().rightPush(key, data);
 
                 // 在最后回填 Redis 的地方也加一句：
                 System.out.println("💾 [调试] 已从数据库查到并回填入 Redis");
@@ -143,6 +143,83 @@ public class ChatHistoryService {
         return messages;
     }
 
+    /**
+     * 启动预热专用：Redis 和 MySQL 的查询各走一遍，但绕过用户过滤器
+     * 过滤器在预热之前就建好了，走 getHistoryMessages 会被它直接挡掉，连接池根本热不起来，还会把过滤器的指标算高
+     */
+    public void warmUp(String userId) {
+        redisTemplate.opsForList().range(HISTORY_KEY_PREFIX + userId, 0, -1);
+        loadRecent(userId);
+    }
+
+    private List<ChatRecord> loadRecent(String userId) {
+        // 1.MyBatis-Plus查询构造器
+        var query = new QueryWrapper<ChatRecord>();
+        query.eq("user_id", userId) // 查当前客户
+                .orderByDesc("create_time") // 按时间倒序（为了取最新的）
+                .last("limit " + MAX_HISTORY_ROUNDS); // 只取最近3条，防止上下文爆炸
+
+        // 2.执行查询
+        return chatRecordMapper.selectList(query);
+    }
+
+    /**
+     * 历史翻页（Keyset 分页）
+     * 不用 OFFSET：每一页都是从上一页最后一条往前找，走 (user_id, create_time) 索引直接定位，翻得再深也一样快
+     * @param cursor 上一页返回的 nextCursor，第一页传 null
+     * @throws IllegalArgumentException 游标不是本服务签发的（被篡改或截断）
+     */
+    public HistoryPage getHistoryPage(String userId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        var query = new QueryWrapper<ChatRecord>();
+        query.eq("user_id", userId);
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor position = decodeCursor(cursor);
+            // (create_time, id) < (cursorTime, cursorId)：同一时刻的多条记录用 id 区分先后
+            query.and(w -> w.lt("create_time", position.createTime())
+                    .or(o -> o.eq("create_time", position.createTime()).lt("id", position.id())));
+        }
+        query.orderByDesc("create_time")
+                .orderByDesc("id")
+                .last("limit " + (pageSize + 1)); // 多查一条，用来判断还有没有下一页
+
+        List<ChatRecord> records = chatRecordMapper.selectList(query);
+
+        String nextCursor = null;
+        if (records.size() > pageSize) {
+            records = new ArrayList<>(records.subList(0, pageSize));
+            ChatRecord last = records.get(records.size() - 1);
+            nextCursor = encodeCursor(last.getCreateTime(), last.getId());
+        }
+        return new HistoryPage(records, nextCursor);
+    }
+
+    /**
+     * 翻页位置：上一页最后一条记录的 (create_time, id)
+     */
+    record Cursor(LocalDateTime createTime, long id) {
+    }
+
+    static String encodeCursor(LocalDateTime createTime, long id) {
+        String plain = createTime + CURSOR_SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decodeCursor(String cursor) {
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = plain.lastIndexOf(CURSOR_SEPARATOR);
+            if (sep <= 0) {
+                throw new IllegalArgumentException("无效的游标: " + cursor);
+            }
+            return new Cursor(LocalDateTime.parse(plain.substring(0, sep)), Long.parseLong(plain.substring(sep + 1)));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            // Base64 解码失败、数字格式错误都是 IllegalArgumentException 的子类
+            throw new IllegalArgumentException("无效的游标: " + cursor, e);
+        }
+    }
+
     /**
      * 保存对话（同时写入MySQL和Redis）
      */
@@ -155,6 +232,8 @@ public class ChatHistoryService {
             record.setAnswer(aiA);
             record.setCreateTime(LocalDateTime.now());
             chatRecordMapper.insert(record);
+            // 这个用户从此有历史了
+            userHistoryFilter.markPresent(userId);
         } catch (Exception e) {
             log.error("❌ MySQL 保存失败", e);
         }
@@ -164,12 +243,12 @@ public class ChatHistoryService {
         try {
             String key = HISTORY_KEY_PREFIX + userId;
 
-            // 构造对象 -> JSON
+            // 构造对象 -> 二进制
             HistoryNode node = new HistoryNode(userQ, aiA);
-            String json = objectMapper.writeValueAsString(node);
+            byte[] data = historyCodecs.encode(node);
 
             // 推入列表尾部（Right Push）
-            redisTemplate.opsForList().rightPush(key, json);
+            redisTemplate.opsForList().rightPush(key, data);
 
             // 维护长度：如果超过限制，弹出最左边（最旧）的数据
             Long size = redisTemplate.opsForList().size(key);
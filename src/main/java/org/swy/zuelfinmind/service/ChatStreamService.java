@@ -0,0 +1,325 @@
+package org.swy.zuelfinmind.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可续传的流式对话：生成过程写入 Redis Stream，客户端只是“读者”
+ * 断线重连时带上 Last-Event-ID，从上次的位置继续读，后台生成不受影响，也不会重复调用大模型
+ * 所有读者都断开且宽限期内没人重连，就取消上游生成，不再为没人看的回答付费
+ * 多实例部署时读者数和取消意图都放在 Redis 里：读者在哪个实例断开都能发起取消，
+ * 真正持有上游连接的实例定时检查取消标记，自己把生成停掉
+ */
+@Service
+public class ChatStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatStreamService.class);
+    private static final String STREAM_KEY_PREFIX = "finmind:stream:";
+    // 当前正在读这个流的客户端数（放 Redis 里，重连到别的实例也能算上）
+    private static final String READERS_KEY_PREFIX = "finmind:stream:readers:";
+    // 取消意图：宽限期过后仍无读者时由任意实例写入，生成所在的实例轮询到后执行取消
+    private static final String CANCEL_KEY_PREFIX = "finmind:stream:cancel:";
+
+    // SSE 的 id 格式：{generationId}:{streamEntryId}，重连时浏览器原样带回来
+    private static final String ID_SEPARATOR = ":";
+
+    // Stream 里每条记录只有一个字段，字段名表示记录类型
+    private static final String FIELD_START = "u";   // 起始记录，值为 userId（续传时校验归属）
+    private static final String FIELD_TEXT = "t";    // 一个文本片段
+    private static final String FIELD_DONE = "done"; // 生成结束（值为 1 表示正常结束，cancelled 表示被取消）
+    private static final String FIELD_ERROR = "err"; // 生成失败
+
+    // 生成完毕后保留10分钟，足够客户端重连
+    private static final Duration FINISHED_TTL = Duration.ofMinutes(10);
+    // 生成中的兜底过期时间，防止实例宕机后留下永远不结束的流
+    private static final Duration RUNNING_TTL = Duration.ofMinutes(30);
+    // 读到末尾后用 XREAD BLOCK 等新内容，有新片段立刻返回；每等这么久醒一次，顺便看看流是否已过期
+    private static final Duration READ_BLOCK = Duration.ofSeconds(2);
+    // 阻塞读要单独占一条连接，连接池满了退回普通 XREAD，隔这么久拉一次
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final int READ_BATCH = 100;
+    // 读者全部断开后等多久再取消生成，给刷新页面/切换网络留出重连时间
+    private static final Duration ORPHAN_GRACE = Duration.ofSeconds(15);
+    // 生成实例检查取消标记的间隔
+    private static final Duration CANCEL_POLL = Duration.ofSeconds(2);
+
+    private final DeepSeekService deepSeekService;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    // 本实例上正在进行的生成，取消时用
+    private final Map<String, Disposable> running = new ConcurrentHashMap<>();
+
+    public ChatStreamService(DeepSeekService deepSeekService, RedisTemplate<String, String> redisTemplate) {
+        this.deepSeekService = deepSeekService;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 对话入口：带了有效的 Last-Event-ID 就续传，否则开启一次新的生成
+     */
+    public Flux<ServerSentEvent<String>> chat(String userId, String userMessage, String lastEventId) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            int sep = lastEventId.indexOf(ID_SEPARATOR);
+            if (sep > 0) {
+                String generationId = lastEventId.substring(0, sep);
+                String entryId = lastEventId.substring(sep + 1);
+                if (isOwnedBy(generationId, userId)) {
+                    log.info("🔁 续传生成 [{}]，从 {} 之后继续", generationId, entryId);
+                    return watch(generationId, tail(generationId, entryId));
+                }
+            }
+            log.info("⚠️ Last-Event-ID [{}] 已失效，重新生成", lastEventId);
+        }
+        return start(userId, userMessage);
+    }
+
+    /**
+     * 开启新的生成：大模型的输出在后台持续写入 Stream，与客户端连接解耦
+     */
+    private Flux<ServerSentEvent<String>> start(String userId, String userMessage) {
+        String generationId = UUID.randomUUID().toString().replace("-", "");
+        String key = STREAM_KEY_PREFIX + generationId;
+        StreamOperations<String, String, String> ops = redisTemplate.opsForStream();
+
+        // 先同步写入起始记录，保证读者开始读的时候 Key 已经存在
+        RecordId startId = ops.add(key, Map.of(FIELD_START, userId));
+        redisTemplate.expire(key, RUNNING_TTL);
+
+        // 先登记再订阅，保证生成结束时 doFinally 一定能把它移除
+        Disposable.Swap generation = Disposables.swap();
+        Disposable.Swap watchdog = Disposables.swap();
+        running.put(generationId, generation);
+        generation.update(Flux.defer(() -> deepSeekService.chat(userId, userMessage))
+                .subscribeOn(Schedulers.boundedElastic())
+                // 写 Redis 是阻塞调用，不要占用 HTTP 客户端的 IO 线程
+                .publishOn(Schedulers.boundedElastic())
+                .filter(chunk -> !chunk.isEmpty())
+                .doFinally(signal -> {
+                    running.remove(generationId);
+                    watchdog.dispose();
+                })
+                .subscribe(
+                        chunk -> ops.add(key, Map.of(FIELD_TEXT, chunk)),
+                        e -> finish(key, FIELD_ERROR, String.valueOf(e.getMessage())),
+                        () -> finish(key, FIELD_DONE, "1")
+                ));
+
+        // 读者可能在别的实例上断开，取消意图只能通过 Redis 传过来，这里定时看一眼
+        // 生成已经结束的话 watchdog 已被 dispose，update 会立即释放新订阅
+        watchdog.update(Flux.interval(CANCEL_POLL, Schedulers.boundedElastic())
+                .filter(t -> cancelRequested(generationId))
+                .take(1)
+                .subscribe(t -> cancelLocally(generationId)));
+
+        // 起始记录本身也要推给客户端，这样还没出字就断线也能续传
+        return watch(generationId, Flux.just(event(generationId, startId.getValue(), FIELD_START, ""))
+                .concatWith(tail(generationId, startId.getValue())));
+    }
+
+    /**
+     * 统计读者数：客户端断开（SSE 订阅被取消）时检查是否已经没人在读
+     * 登记和注销都是阻塞的 Redis 调用，订阅/取消信号可能来自 IO 线程，统一切到 boundedElastic 执行；
+     * 用 usingWhen 保证只有登记成功的读者才会注销
+     */
+    private Flux<ServerSentEvent<String>> watch(String generationId, Flux<ServerSentEvent<String>> events) {
+        String readersKey = READERS_KEY_PREFIX + generationId;
+        return Flux.usingWhen(
+                Mono.fromCallable(() -> {
+                    redisTemplate.opsForValue().increment(readersKey);
+                    redisTemplate.expire(readersKey, RUNNING_TTL);
+                    // 有人重连回来了，撤销之前发出的取消意图
+                    redisTemplate.delete(CANCEL_KEY_PREFIX + generationId);
+                    return readersKey;
+                }).subscribeOn(Schedulers.boundedElastic()),
+                key -> events,
+                key -> leave(generationId, false),
+                (key, e) -> leave(generationId, false),
+                key -> leave(generationId, true));
+    }
+
+    /**
+     * 读者离开：读者数减一；是客户端断开（而不是读完）的话，宽限期后检查是否还有人在读
+     */
+    private Mono<Void> leave(String generationId, boolean disconnected) {
+        return Mono.<Void>fromRunnable(() -> {
+                    try {
+                        redisTemplate.opsForValue().decrement(READERS_KEY_PREFIX + generationId);
+                    } catch (Exception e) {
+                        log.error("❌ 更新读者数失败: {}", e.getMessage());
+                    }
+                    if (disconnected) {
+                        log.info("🔌 客户端断开，{} 秒后检查生成 [{}] 是否还有读者", ORPHAN_GRACE.getSeconds(), generationId);
+                        Mono.delay(ORPHAN_GRACE, Schedulers.boundedElastic())
+                                .subscribe(t -> requestCancelIfOrphaned(generationId));
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 宽限期过后仍然没有读者：在 Redis 里留下取消意图
+     * 生成就在本实例上的话直接取消，不用等下一轮轮询
+     */
+    private void requestCancelIfOrphaned(String generationId) {
+        if (hasReaders(generationId)) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(CANCEL_KEY_PREFIX + generationId, "1", FINISHED_TTL);
+        } catch (Exception e) {
+            log.error("❌ 写入取消标记失败: {}", e.getMessage());
+            return;
+        }
+        if (running.containsKey(generationId)) {
+            cancelLocally(generationId);
+        }
+    }
+
+    /**
+     * 生成实例轮询用：有取消标记，并且这期间没人重连回来
+     */
+    private boolean cancelRequested(String generationId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(CANCEL_KEY_PREFIX + generationId))
+                    && !hasReaders(generationId);
+        } catch (Exception e) {
+            log.error("❌ 读取取消标记失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean hasReaders(String generationId) {
+        try {
+            String readers = redisTemplate.opsForValue().get(READERS_KEY_PREFIX + generationId);
+            return readers != null && Long.parseLong(readers) > 0;
+        } catch (Exception e) {
+            log.error("❌ 读取读者数失败，保守起见继续生成: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 取消本实例上的生成：取消信号会一路传到 DeepSeek 的 HTTP 连接
+     */
+    private void cancelLocally(String generationId) {
+        Disposable generation = running.remove(generationId);
+        if (generation == null) {
+            return; // 已经生成完，或者已被别的路径取消
+        }
+        log.info("🛑 生成 [{}] 已无读者，取消上游生成", generationId);
+        generation.dispose();
+        // 取消后不会再走 onComplete，手动写入结束标记，让别处的读者也能退出
+        finish(STREAM_KEY_PREFIX + generationId, FIELD_DONE, "cancelled");
+    }
+
+    /**
+     * 从 entryId 之后开始读 Stream，直到读到结束记录
+     */
+    private Flux<ServerSentEvent<String>> tail(String generationId, String entryId) {
+        String key = STREAM_KEY_PREFIX + generationId;
+        StreamOperations<String, String, String> ops = redisTemplate.opsForStream();
+        AtomicReference<String> offset = new AtomicReference<>(entryId);
+        AtomicBoolean expired = new AtomicBoolean(false);
+
+        return Flux.defer(() -> {
+                    StreamOffset<String> from = StreamOffset.create(key, ReadOffset.from(offset.get()));
+                    List<MapRecord<String, String, String>> batch;
+                    boolean blocked = true;
+                    try {
+                        // 没有新内容时在 Redis 那边等着，新片段写进来马上返回，不用每 100ms 空跑一次
+                        batch = ops.read(StreamReadOptions.empty().count(READ_BATCH).block(READ_BLOCK), from);
+                    } catch (Exception e) {
+                        log.debug("阻塞读取失败，退回轮询: {}", e.getMessage());
+                        blocked = false;
+                        batch = ops.read(StreamReadOptions.empty().count(READ_BATCH), from);
+                    }
+
+                    if (batch == null || batch.isEmpty()) {
+                        // 读不到新内容：Key 都没了说明流已过期，没必要再等
+                        if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                            expired.set(true);
+                        }
+                        return blocked
+                                ? Flux.<MapRecord<String, String, String>>empty()
+                                : Mono.delay(POLL_INTERVAL).thenMany(Flux.<MapRecord<String, String, String>>empty());
+                    }
+                    offset.set(batch.get(batch.size() - 1).getId().getValue());
+                    return Flux.fromIterable(batch);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .repeat(() -> !expired.get())
+                .takeUntil(record -> record.getValue().containsKey(FIELD_DONE)
+                        || record.getValue().containsKey(FIELD_ERROR))
+                .filter(record -> !record.getValue().containsKey(FIELD_DONE))
+                .map(record -> {
+                    Map<String, String> value = record.getValue();
+                    if (value.containsKey(FIELD_ERROR)) {
+                        return event(generationId, record.getId().getValue(), FIELD_ERROR, "❌ 生成中断：" + value.get(FIELD_ERROR));
+                    }
+                    return event(generationId, record.getId().getValue(), FIELD_TEXT, value.getOrDefault(FIELD_TEXT, ""));
+                });
+    }
+
+    private ServerSentEvent<String> event(String generationId, String entryId, String type, String data) {
+        ServerSentEvent.Builder<String> builder = ServerSentEvent.<String>builder()
+                .id(generationId + ID_SEPARATOR + entryId);
+        if (FIELD_START.equals(type)) {
+            // 只带 id 不带 data，前端只解析 data: 行，不会多出空内容
+            return builder.comment("generation").build();
+        }
+        if (FIELD_ERROR.equals(type)) {
+            builder.event("error");
+        }
+        return builder.data(data).build();
+    }
+
+    private void finish(String key, String field, String value) {
+        try {
+            redisTemplate.opsForStream().add(key, Map.of(field, value));
+            redisTemplate.expire(key, FINISHED_TTL);
+            redisTemplate.expire(READERS_KEY_PREFIX + key.substring(STREAM_KEY_PREFIX.length()), FINISHED_TTL);
+        } catch (Exception e) {
+            log.error("❌ 写入流结束标记失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 续传前校验：流还在，且确实是这个用户发起的
+     */
+    private boolean isOwnedBy(String generationId, String userId) {
+        try {
+            StreamOperations<String, String, String> ops = redisTemplate.opsForStream();
+            List<MapRecord<String, String, String>> first = ops.read(
+                    StreamReadOptions.empty().count(1),
+                    StreamOffset.create(STREAM_KEY_PREFIX + generationId, ReadOffset.from("0-0")));
+            return first != null && !first.isEmpty()
+                    && userId.equals(first.get(0).getValue().get(FIELD_START));
+        } catch (Exception e) {
+            log.error("❌ 读取生成流失败: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,20 +1,25 @@
 package org.swy.zuelfinmind.service;
 
-import com.huaban.analysis.jieba.JiebaSegmenter;
-import com.huaban.analysis.jieba.SegToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 import org.swy.zuelfinmind.model.VectorSearchResult;
 import org.swy.zuelfinmind.service.strategy.impl.PineconeVectorStore;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service // 1.告诉Spring：这是“专家”，请开机时把它实例化放到容器里
 public class DeepSeekService {
@@ -27,26 +32,23 @@ public class DeepSeekService {
 
     private final PineconeVectorStore vectorStore;
 
-    // 实例化分词器（线程安全，可以做成成员变量）
-    private final JiebaSegmenter segmenter =  new JiebaSegmenter();
+    // 不同维度的影子索引，只陪跑不参与回答
+    private final ShadowIndexService shadowIndexService;
 
-    // 定义停用词表 (过滤掉没用的字，防止噪音干扰)
-    private static final Set<String> STOP_WORDS = Set.of(
-            "的", "了", "和", "是", "就", "都", "而", "及", "与", "在", "这", "那", "有", "什么", "怎么", "我", "你", "它"
-             // 可选：如果每个文档都有ZUEL，那它就不是区分特征，可以过滤
-    );
+    // 混合重排序（向量得分 + 结巴分词关键词命中）
+    private final Reranker reranker;
 
-    // 构造函数注入：Spring会自动把ChatModel递给你
-    public DeepSeekService(ChatModel chatModel, ChatHistoryService historyService, PineconeVectorStore vectorStore) {
-        this.chatModel = chatModel;
-        this.historyService = historyService;
-        this.vectorStore = vectorStore;
-    }
+    // 检索结果缓存（按知识库版本失效）
+    private final RetrievalCacheService retrievalCache;
 
-    public Flux<String> chat(String userId, String userMessage) {
+    // 用户打字时提前算好的检索结果
+    private final PrefetchService prefetchService;
 
-        // 1.准备“面包顶层”：系统人设
-        String systemText = """
+    // 检索前先判断要不要查知识库
+    private final IntentRouter intentRouter;
+
+    // 1.“面包顶层”：系统人设
+    public static final String SYSTEM_PROMPT = """
         你是一个名为 'ZUEL-FinMind' 的专业金融AI助手，由中南财经政法大学(ZUEL)的学生开发。
 
         你的核心原则：
@@ -55,46 +57,82 @@ public class DeepSeekService {
         3. 回答要简短精炼，多用数据说话。
         """;
 
-        SystemMessage systemMsg = new SystemMessage(systemText);
+    // 中途取消时，追加在残缺回答后面的标记（下一轮对话时大模型也能看到这句话没说完）
+    static final String TRUNCATED_MARK = "\n\n[⚠️ 回答已中断]";
 
-        // 2.准备”中间夹心“：从数据库捞取历史记忆
+    // 监控指标：流式输出每个片段约等于一个 Token，用片段数近似 Token 数
+    private final DistributionSummary completionTokens;
+    private final Counter cancelledCounter;
+    private final Counter cancelledTokens;
+    private final Counter tokensSaved;
 
-        List<Message> historyMessages = historyService.getHistoryMessages(userId);
+    private final MeterRegistry meterRegistry;
+
+    // 构造函数注入：Spring会自动把ChatModel递给你
+    public DeepSeekService(ChatModel chatModel, ChatHistoryService historyService, PineconeVectorStore vectorStore,
+                           ShadowIndexService shadowIndexService, Reranker reranker,
+                           RetrievalCacheService retrievalCache, PrefetchService prefetchService,
+                           IntentRouter intentRouter, MeterRegistry meterRegistry) {
+        this.chatModel = chatModel;
+        this.historyService = historyService;
+        this.vectorStore = vectorStore;
+        this.shadowIndexService = shadowIndexService;
+        this.reranker = reranker;
+        this.retrievalCache = retrievalCache;
+        this.prefetchService = prefetchService;
+        this.intentRouter = intentRouter;
+        this.meterRegistry = meterRegistry;
+
+        this.completionTokens = DistributionSummary.builder("finmind.chat.completion.tokens")
+                .description("完整回答的Token数（按流式片段估算）")
+                .register(meterRegistry);
+        this.cancelledCounter = Counter.builder("finmind.chat.cancelled")
+                .description("被提前取消的上游生成次数")
+                .register(meterRegistry);
+        this.cancelledTokens = Counter.builder("finmind.chat.cancelled.tokens")
+                .description("取消前已生成的Token数")
+                .register(meterRegistry);
+        this.tokensSaved = Counter.builder("finmind.chat.cancelled.tokens.saved")
+                .description("提前取消节省的Token数（按完整回答的平均长度估算）")
+                .register(meterRegistry);
+    }
+
+    public Flux<String> chat(String userId, String userMessage) {
+
+        // 1.准备“面包顶层”：系统人设
+        SystemMessage systemMsg = new SystemMessage(SYSTEM_PROMPT);
 
         // 3.准备”面包底层“：知识库 + 当前提问
-        List<VectorSearchResult> candidates = vectorStore.search(userMessage);
+        // 检索和加载历史互不依赖：先把检索异步发出去，同时去查历史
+        CompletableFuture<List<String>> chunksFuture = Mono.fromCallable(() -> retrieveForChat(userId, userMessage))
+                .subscribeOn(Schedulers.boundedElastic())
+                // 检索超时或失败不能让整个对话报错：降级为没有资料，照常回答
+                .onErrorResume(e -> {
+                    Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+                    String reason = cause instanceof TimeoutException ? "timeout" : "error";
+                    meterRegistry.counter("finmind.chat.retrieval.failed", "reason", reason).increment();
+                    System.out.println("⚠️ 知识库检索失败（" + reason + "），本次不带资料回答: " + cause.getMessage());
+                    return Mono.just(List.of());
+                })
+                .toFuture();
 
-        // ---------------------------------------------------------
-        // 🔧 【升级点 2】：引入 Java 内存重排序
-        // ---------------------------------------------------------
-        List<String> bestChunks = rerank(candidates, userMessage);
+        // 2.准备”中间夹心“：从数据库捞取历史记忆
+
+        List<Message> historyMessages = historyService.getHistoryMessages(userId);
+
+        List<String> bestChunks = chunksFuture.join();
 
         String context = String.join("\n\n", bestChunks);
 
         // 3. 打印出来看看 (这就是我们要喂给 AI 的背景资料)
         System.out.println("🤖 RAG 检索到的干货:\n" + context);
 
-        // -----------------------------------------------------------
-        // 🔧 【修复点】：根据是否查到资料，动态调整指令
-        // -----------------------------------------------------------
-        String finalUserMsg;
         if (context.trim().isEmpty()) {
-            // 场景 A：没查到资料 (比如闲聊、打招呼、自我介绍)
-            // 策略：不要强迫它“不知道”，而是让它自由发挥，利用历史记录聊天
             System.out.println("🤖 未检索到RAG资料，切换为[自由对话模式]");
-            finalUserMsg = userMessage;
         } else {
-            // 场景 B：查到了资料 (比如问ZUEL专业)
-            // 策略：严格限制范围，防止幻觉
             System.out.println("🤖 检索到RAG资料，切换为[严格知识库模式]");
-            finalUserMsg = String.format(
-                    "【背景资料】：%s\n\n【用户问题】：%s\n\n请结合背景资料和上下文回答。如果资料中包含答案，请依据资料；如果是闲聊或与资料不相关，请利用你的通用知识回答。",
-                    context,
-                    userMessage
-            );
         }
-
-        UserMessage currentUserMsg = new UserMessage(finalUserMsg);
+        UserMessage currentUserMsg = new UserMessage(buildUserMessage(context, userMessage));
 
         // 4.拼接三明治（List顺序：System -> History -> Current）
         List<Message> prompList = new ArrayList<>();
@@ -107,8 +145,11 @@ public class DeepSeekService {
 
         // 用于收集完整的回答，方便最后存库
         StringBuilder fullAnswerAccumulator = new StringBuilder();
+        AtomicInteger tokenCount = new AtomicInteger();
 
         return chatModel.stream(prompt)
+                // 取消信号一路传到这里，说明已经到达 OpenAI 客户端，底层 HTTP 连接会被关闭
+                .doOnCancel(() -> System.out.println("🛑 上游生成已取消，DeepSeek 连接已释放"))
                 .map(response -> {
                     // 从流里拿到一个字/词
                     String chunks = response.getResult().getOutput().getText();
@@ -116,73 +157,116 @@ public class DeepSeekService {
                     return chunks != null ? chunks : "";
                 })
                 // 【关键】每流过一个字，就往 StringBuilder 里塞
-                .doOnNext(fullAnswerAccumulator::append)
+                .doOnNext(chunk -> {
+                    fullAnswerAccumulator.append(chunk);
+                    tokenCount.incrementAndGet();
+                })
                 .doOnComplete(() -> {
                     String fullAnswer = fullAnswerAccumulator.toString();
                     System.out.println("✅ 流式生成完毕，存入记忆库。");
+                    completionTokens.record(tokenCount.get());
                     // 调用后勤官存库
                     historyService.saveInteraction(userId, userMessage, fullAnswer);
                 })
+                .doOnCancel(() -> {
+                    // 用户中途离开：已生成的部分也存下来，并标记为残缺
+                    int generated = tokenCount.get();
+                    cancelledCounter.increment();
+                    cancelledTokens.increment(generated);
+                    tokensSaved.increment(Math.max(0, completionTokens.mean() - generated));
+
+                    String partialAnswer = fullAnswerAccumulator.toString();
+                    System.out.println("✂️ 生成被取消，已生成 " + generated + " 个片段，残缺回答存入记忆库。");
+                    if (!partialAnswer.isEmpty()) {
+                        historyService.saveInteraction(userId, userMessage, partialAnswer + TRUNCATED_MARK);
+                    }
+                })
                 .doOnError(e -> System.err.println("❌ 流式生成中断：" + e.getMessage()));
     }
 
     /**
-     * 🆕 核心功能：上传文件 -> 解析 -> 切块 -> 向量化 -> 存库
+     * 🏃 投机预取：拿草稿提前加载历史记录、跑检索和重排序，结果留给随后的 chat 使用
+     * @return false 表示这次没有预取（草稿太短或预取名额已满）
      */
-    public String uploadAndLearn(MultipartFile file) {
-        return vectorStore.store(file);
+    public boolean prefetch(String userId, String draft) {
+        if (intentRouter.isEnabled() && intentRouter.shouldSkip(intentRouter.classify(draft))) {
+            return false; // 闲聊不用检索，也就不用预取
+        }
+        return prefetchService.submit(userId, draft,
+                () -> historyService.getHistoryMessages(userId),
+                () -> retrievalCache.getOrCompute(draft, () -> retrieve(draft)));
     }
 
     /**
-     * 🧠 核心算法：内存重排序 (Hybrid Rerank)
-     * 结合了“向量相似度”和“关键词匹配度”
-     * 🔄 修复版 Rerank：引入真正的中文分词
+     * 闲聊、追问上文直接跳过检索（意图路由生效时）
+     * 打字时已经用草稿预取过的话直接用；否则知识库没变过的话，同样的问题直接用缓存，跳过远程检索和重排序
      */
-    private List<String> rerank(List<VectorSearchResult> candidates, String userMessage) {
-
-        // 简单分词：把用户问题按空格或标点切开（简易版，不需要引入 Jieba）
-        // 比如“ZUEL新增了什么实验班” -> ["ZUEL", "新增", "了", "什么", "实验班"]
-//        String[] keywords = userMessage.split("[\\s,?.!，。？！]+");
-
-
-
-        // --- 🟢 变化点 1：使用结巴分词 ---
-        // SegMode.SEARCH 用于搜索引擎模式，切得比较细
-        List<SegToken> tokens = segmenter.process(userMessage, JiebaSegmenter.SegMode.SEARCH);
-
-        // 提取关键词列表
-        // 核心优化：将 List 转为 HashSet，把 contains 方法的时间复杂度从 O(n) 降到 O(1)
-        Set<String> keywords = new HashSet<>();
-        for (SegToken token : tokens) {
-            String word = token.word;
-            // 过滤规则：长度大于1且不在停用此表中
-            if (word.length() > 1 && !STOP_WORDS.contains(word)) {
-                keywords.add(word);
+    private List<String> retrieveForChat(String userId, String userMessage) {
+        IntentRouter.Decision decision = null;
+        if (intentRouter.isEnabled()) {
+            decision = intentRouter.classify(userMessage);
+            if (intentRouter.shouldSkip(decision)) {
+                System.out.printf("🚦 意图 [%s]（置信度 %.2f），跳过知识库检索%n", decision.intent(), decision.confidence());
+                return List.of();
             }
         }
 
-        return candidates.stream()
-                .map(candidate -> {
-                    long hitCounts = keywords.stream()
-                            .filter(keyword -> candidate.getText().contains(keyword))
-                            .count();
+        List<String> chunks = prefetchService.consume(userId, userMessage);
+        if (chunks == null) {
+            chunks = retrievalCache.getOrCompute(userMessage, () -> retrieve(userMessage));
+        }
 
-                    double keywordScore = Math.min(hitCounts / 3.0, 1.0);
+        if (decision != null && intentRouter.isShadow()) {
+            intentRouter.recordShadow(decision, chunks);
+        }
+        return chunks;
+    }
 
-                    float score = (float) ((candidate.getScore() * 0.8) + (keywordScore * 0.2));
+    /**
+     * 向量检索 + 重排序，返回最终喂给大模型的资料块
+     */
+    private List<String> retrieve(String userMessage) {
+        List<VectorSearchResult> candidates = vectorStore.search(userMessage);
+        if (shadowIndexService.isEnabled()) {
+            shadowIndexService.shadowSearch(userMessage, candidates);
+        }
 
-                    System.out.printf("文本前缀：%s | 原始向量得分：%.2f | 关键词命中数：%d | 最终得分：%.2f \n",
-                            candidate.getText().substring(0, Math.min (candidate.getText().length (), 20)), // 更长前缀，避免越界
-                            candidate.getScore(),
-                            hitCounts,
-                            score);
+        // ---------------------------------------------------------
+        // 🔧 【升级点 2】：引入 Java 内存重排序
+        // ---------------------------------------------------------
+        return reranker.rerank(candidates, userMessage);
+    }
 
-                    return new VectorSearchResult(candidate.getText(), score, candidate.getSource());
-                })
-                .filter(candidate -> candidate.getScore() > 0.65)// 智谱0.4，集成0.65
-                .sorted((a,b) -> Float.compare(b.getScore(), a.getScore()))
-                .limit(5)
-                .map(VectorSearchResult::getText)
-                .collect(Collectors.toList());
+    /**
+     * 🔧 【修复点】：根据是否查到资料，动态调整指令
+     * 离线评测也用它来统计提示词长度，保证和线上一致（所以这里不打日志，模式提示在 chat 里打）
+     */
+    public static String buildUserMessage(String context, String userMessage) {
+        if (context.trim().isEmpty()) {
+            // 场景 A：没查到资料 (比如闲聊、打招呼、自我介绍)
+            // 策略：不要强迫它“不知道”，而是让它自由发挥，利用历史记录聊天
+            return userMessage;
+        }
+        // 场景 B：查到了资料 (比如问ZUEL专业)
+        // 策略：严格限制范围，防止幻觉
+        return String.format(
+                "【背景资料】：%s\n\n【用户问题】：%s\n\n请结合背景资料和上下文回答。如果资料中包含答案，请依据资料；如果是闲聊或与资料不相关，请利用你的通用知识回答。",
+                context,
+                userMessage
+        );
+    }
+
+    /**
+     * 🔥 预热：加载结巴词典，并用合成数据反复跑重排序，让 JIT 提前编译热点代码
+     */
+    public void warmUp(int iterations) {
+        List<VectorSearchResult> candidates = List.of(
+                new VectorSearchResult("ZUEL是中南财经政法大学的简称，位于武汉。", 0.85f, "warmup"),
+                new VectorSearchResult("金融科技实验班面向全校选拔，培养复合型人才。", 0.75f, "warmup"),
+                new VectorSearchResult("Java不仅能写后端，还能通过Spring AI开发大模型应用。", 0.60f, "warmup")
+        );
+        for (int i = 0; i < iterations; i++) {
+            reranker.rerank(candidates, "ZUEL今年新增了什么金融科技实验班？", false);
+        }
     }
 }
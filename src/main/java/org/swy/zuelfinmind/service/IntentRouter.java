@@ -0,0 +1,188 @@
+package org.swy.zuelfinmind.service;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.SegToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.swy.zuelfinmind.config.IntentProperties;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 🚦 意图路由：检索之前先在本地判断这一轮要不要查知识库
+ * 打招呼、自我介绍、道谢、追问上文这类对话查了也是白查（最后还是切到自由对话模式），直接跳过远程检索
+ * 纯规则 + 结巴分词特征，不需要网络，微秒级
+ */
+@Component
+public class IntentRouter {
+
+    public enum Intent {
+        CHITCHAT,   // 问候、道谢、自我介绍、告别
+        HISTORY,    // 只依赖上文（“刚才说的”“我叫什么”）
+        KNOWLEDGE   // 需要查知识库
+    }
+
+    /**
+     * @param confidence 预测类别得分占总分的比例
+     */
+    public record Decision(Intent intent, double confidence, boolean skipRetrieval) {}
+
+    // 整句级别的模式比单个词可靠，权重更高
+    private static final double PATTERN_WEIGHT = 3.0;
+
+    // 整句级别的模式，命中一个加一份证据
+    private static final Map<Intent, List<Pattern>> PATTERNS = Map.of(
+            Intent.CHITCHAT, List.of(
+                    Pattern.compile("^(你好|您好|嗨|哈喽|hi|hello|hey|早上好|中午好|下午好|晚上好|早安|晚安)"),
+                    Pattern.compile("(^|[，,。！!\\s])我(是|叫)[^，。？?]{1,10}([，。！!]|$)"),
+                    Pattern.compile("我的名字(是|叫)"),
+                    Pattern.compile("^(谢谢|多谢|感谢)|(谢谢|多谢|感谢|辛苦了|太棒了|好的|明白了|收到)[！!。~]*$"),
+                    Pattern.compile("(再见|拜拜|bye)[！!。~]*$"),
+                    Pattern.compile("^(你是谁|你叫什么|介绍一下你自己)")),
+            Intent.HISTORY, List.of(
+                    // 时间词必须后面跟着“说/问/提”这类指代对话的动作：“ZUEL之前叫什么”问的是知识，不是上文
+                    Pattern.compile("(刚才|刚刚|上面|前面|之前|上一个|上一条)(你|我)?(说|问|提|讲|聊|回答|那个|那条)|你说的"),
+                    Pattern.compile("(再说一遍|重复一下|换个说法|说详细点|展开说说|继续)"),
+                    Pattern.compile("(总结|回顾).{0,4}(对话|聊天|我们)"),
+                    Pattern.compile("(我|你)(刚才|之前)?(问|说)了(什么|啥)"),
+                    Pattern.compile("^我(叫什么|是谁)")));
+
+    // 分词后的词级证据
+    private static final Map<Intent, Set<String>> LEXICON = Map.of(
+            Intent.CHITCHAT, Set.of("你好", "您好", "哈喽", "谢谢", "感谢", "再见", "拜拜", "早安", "晚安", "哈哈", "嘿嘿"),
+            // “之前/前面/上面”单独出现太常见（“之前叫什么”“前面的校区”），只靠上面的整句模式识别
+            Intent.HISTORY, Set.of("刚才", "刚刚", "继续", "总结", "回顾"),
+            Intent.KNOWLEDGE, Set.of("zuel", "中南", "财经", "政法", "大学", "学院", "专业", "课程", "实验班", "招生",
+                    "学费", "保研", "考研", "金融", "经济", "科技", "java", "spring", "编程", "介绍", "哪些", "多少",
+                    "怎么", "如何", "为什么", "区别"));
+
+    // 疑问句本身就是“可能要查资料”的证据
+    private static final Pattern QUESTION = Pattern.compile("[?？吗呢]|什么|哪|多少|几");
+
+    // 默认偏向检索：没有任何证据时置信度不会超过阈值
+    private static final double KNOWLEDGE_PRIOR = 1.0;
+
+    private final JiebaSegmenter segmenter = new JiebaSegmenter();
+
+    private final IntentProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    // 影子模式的四种结果：该跳的跳了 / 不该跳的跳了 / 该查的查了 / 该跳的没跳
+    private final Counter trueSkip;
+    private final Counter falseSkip;
+    private final Counter trueRetrieve;
+    private final Counter missedSkip;
+
+    public IntentRouter(IntentProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+
+        this.trueSkip = shadowCounter("true_skip");
+        this.falseSkip = shadowCounter("false_skip");
+        this.trueRetrieve = shadowCounter("true_retrieve");
+        this.missedSkip = shadowCounter("missed_skip");
+        Gauge.builder("finmind.intent.shadow.accuracy", this, IntentRouter::accuracy)
+                .description("影子模式下分类结果和实际检索结果一致的比例")
+                .register(meterRegistry);
+        // 跳过了但实际能查到资料的比例：这个高说明阈值太松，会漏答
+        Gauge.builder("finmind.intent.shadow.false.skip.rate", this, IntentRouter::falseSkipRate)
+                .register(meterRegistry);
+    }
+
+    public Decision classify(String userMessage) {
+        String text = userMessage.trim().toLowerCase(Locale.ROOT);
+        Map<Intent, Double> scores = new EnumMap<>(Intent.class);
+        scores.put(Intent.CHITCHAT, 0.0);
+        scores.put(Intent.HISTORY, 0.0);
+        scores.put(Intent.KNOWLEDGE, KNOWLEDGE_PRIOR);
+
+        PATTERNS.forEach((intent, patterns) -> {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(text).find()) {
+                    scores.merge(intent, PATTERN_WEIGHT, Double::sum);
+                }
+            }
+        });
+
+        List<SegToken> tokens = segmenter.process(text, JiebaSegmenter.SegMode.SEARCH);
+        for (SegToken token : tokens) {
+            LEXICON.forEach((intent, words) -> {
+                if (words.contains(token.word)) {
+                    scores.merge(intent, 1.0, Double::sum);
+                }
+            });
+        }
+
+        if (QUESTION.matcher(text).find()) {
+            scores.merge(Intent.KNOWLEDGE, 1.0, Double::sum);
+        }
+        // 越长越像正经提问，寒暄一般不超过 8 个字
+        scores.merge(Intent.KNOWLEDGE, Math.min(Math.max(text.length() - 8, 0) / 10.0, 2.0), Double::sum);
+
+        Intent best = Intent.KNOWLEDGE;
+        double total = 0;
+        for (Map.Entry<Intent, Double> entry : scores.entrySet()) {
+            total += entry.getValue();
+            if (entry.getValue() > scores.get(best)) {
+                best = entry.getKey();
+            }
+        }
+        double confidence = scores.get(best) / total;
+        boolean skip = best != Intent.KNOWLEDGE && confidence >= properties.getConfidenceThreshold();
+
+        meterRegistry.counter("finmind.intent.decision", "intent", best.name().toLowerCase(Locale.ROOT),
+                "action", skip ? "skip" : "retrieve").increment();
+        return new Decision(best, confidence, skip);
+    }
+
+    /**
+     * 分类结果是否生效（ENFORCE 模式下才真正跳过检索）
+     */
+    public boolean shouldSkip(Decision decision) {
+        return properties.getMode() == IntentProperties.Mode.ENFORCE && decision.skipRetrieval();
+    }
+
+    public boolean isEnabled() {
+        return properties.getMode() != IntentProperties.Mode.OFF;
+    }
+
+    public boolean isShadow() {
+        return properties.getMode() == IntentProperties.Mode.SHADOW;
+    }
+
+    /**
+     * 影子模式打分：以“检索 + 重排序后有没有资料”作为标准答案
+     * （没有资料时原本就会切到自由对话模式，等价于不需要检索）
+     */
+    public void recordShadow(Decision decision, List<String> chunks) {
+        boolean needed = !chunks.isEmpty();
+        if (decision.skipRetrieval()) {
+            (needed ? falseSkip : trueSkip).increment();
+        } else {
+            (needed ? trueRetrieve : missedSkip).increment();
+        }
+    }
+
+    private Counter shadowCounter(String outcome) {
+        return Counter.builder("finmind.intent.shadow").tag("outcome", outcome).register(meterRegistry);
+    }
+
+    private double accuracy() {
+        double correct = trueSkip.count() + trueRetrieve.count();
+        double total = correct + falseSkip.count() + missedSkip.count();
+        return total == 0 ? 0 : correct / total;
+    }
+
+    private double falseSkipRate() {
+        double skipped = trueSkip.count() + falseSkip.count();
+        return skipped == 0 ? 0 : falseSkip.count() / skipped;
+    }
+}
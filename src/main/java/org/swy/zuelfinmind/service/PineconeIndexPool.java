@@ -0,0 +1,224 @@
+package org.swy.zuelfinmind.service;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pinecone.clients.Index;
+import io.pinecone.configs.PineconeConfig;
+import io.pinecone.configs.PineconeConnection;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.swy.zuelfinmind.config.PineconeProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 🏊 Pinecone Index 池：N 条独立连接轮询使用
+ * 每条连接有自己的 gRPC Channel（query/upsert/stats）和自己的 HTTP 客户端（集成索引的 records 接口），
+ * 并发检索不再排队挤一条连接；每条连接单独统计耗时，哪条慢一眼就能看出来
+ * 两条路径都有超时：gRPC 靠 Channel 上的 deadline，HTTP 靠 OkHttp 的读超时/整体超时
+ */
+public class PineconeIndexPool implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PineconeIndexPool.class);
+
+    private static final int GRPC_PORT = 443;
+
+    private final List<Member> members = new ArrayList<>();
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private final long deadlineMillis;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 池里的一条连接：Index 本身 + 它独占的 Channel + 统计用的计数
+     */
+    private record Member(int id, Index index, ManagedChannel channel, AtomicInteger inFlight) {}
+
+    /**
+     * 允许抛受检异常的调用（Pinecone 的 records 接口会抛 ApiException）
+     */
+    @FunctionalInterface
+    public interface PineconeCall<T> {
+        T apply(Index index) throws Exception;
+    }
+
+    public PineconeIndexPool(String apiKey, PineconeProperties properties, MeterRegistry meterRegistry) {
+        this.deadlineMillis = properties.getDeadlineMillis();
+        this.meterRegistry = meterRegistry;
+
+        int size = properties.effectivePoolSize();
+        for (int i = 0; i < size; i++) {
+            ManagedChannel channel = ManagedChannelBuilder.forAddress(properties.getHost(), GRPC_PORT)
+                    .useTransportSecurity()
+                    .keepAliveTime(properties.getKeepAliveSeconds(), TimeUnit.SECONDS)
+                    .keepAliveTimeout(properties.getKeepAliveTimeoutSeconds(), TimeUnit.SECONDS)
+                    .keepAliveWithoutCalls(properties.isKeepAliveWithoutCalls())
+                    .intercept(new DeadlineInterceptor(deadlineMillis))
+                    .build();
+
+            // records 接口（searchRecordsByText / upsertRecords）走 HTTP，不经过 gRPC Channel，超时要单独设
+            OkHttpClient httpClient = new OkHttpClient.Builder()
+                    .connectTimeout(properties.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .readTimeout(properties.getUpsertTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(properties.getUpsertTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .callTimeout(properties.getUpsertTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .addInterceptor(new SearchTimeoutInterceptor((int) deadlineMillis))
+                    .build();
+
+            PineconeConfig config = new PineconeConfig(apiKey);
+            config.setHost(properties.getHost());
+            config.setCustomManagedChannel(channel);
+            config.setCustomOkHttpClient(httpClient);
+            Index index = new Index(config, new PineconeConnection(config), properties.getIndexName());
+
+            Member member = new Member(i, index, channel, new AtomicInteger());
+            members.add(member);
+            Gauge.builder("finmind.pinecone.inflight", member.inFlight(), AtomicInteger::get)
+                    .tag("channel", String.valueOf(i))
+                    .description("这条连接上正在进行的调用数")
+                    .register(meterRegistry);
+        }
+
+        // 守护线程：离线评测这类 main 方法跑完就能退出，不用显式 close
+        // 有界队列：Pinecone 整体变慢时排不上的检索直接拒绝，而不是越堆越多
+        AtomicInteger threadId = new AtomicInteger();
+        int threads = properties.effectiveThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.effectiveQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "pinecone-search-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("🏊 Pinecone 连接池就绪：{} 条连接，{} 个检索线程（排队上限 {}），单次超时 {} ms",
+                size, threads, properties.effectiveQueueCapacity(), deadlineMillis);
+    }
+
+    /**
+     * 同步调用：轮询选一条连接，记录这条连接上的耗时
+     */
+    public <T> T call(String operation, PineconeCall<T> call) {
+        Member member = next();
+        Timer timer = Timer.builder("finmind.pinecone.call")
+                .description("Pinecone 调用耗时（按连接、操作区分）")
+                .tag("channel", String.valueOf(member.id()))
+                .tag("op", operation)
+                .register(meterRegistry);
+
+        member.inFlight().incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return call.apply(member.index());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            member.inFlight().decrementAndGet();
+        }
+    }
+
+    /**
+     * 异步调用：在检索线程池里执行，超过 deadline 直接以 TimeoutException 结束，调用方不用一直等
+     * （gRPC 调用由 Channel 上的 deadline 真正取消；HTTP 检索由读超时兜底，线程最多再占用一个 deadline）
+     * 线程池排满时立即失败；在队列里等到超时才轮到的任务直接跳过，不再白白发请求
+     */
+    public <T> CompletableFuture<T> callAsync(String operation, PineconeCall<T> call) {
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                        if (System.nanoTime() - submitted > TimeUnit.MILLISECONDS.toNanos(deadlineMillis)) {
+                            throw new CompletionException(new TimeoutException("排队超过 " + deadlineMillis + " ms，调用方已放弃"));
+                        }
+                        return call(operation, call);
+                    }, executor)
+                    .orTimeout(deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("finmind.pinecone.rejected", "op", operation).increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 对池里每条连接都执行一次（预热时用，让每条连接都提前握手）
+     */
+    public void forEach(Consumer<Index> action) {
+        members.forEach(member -> action.accept(member.index()));
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    private Member next() {
+        return members.get(Math.floorMod(cursor.getAndIncrement(), members.size()));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        for (Member member : members) {
+            member.channel().shutdown();
+        }
+        for (Member member : members) {
+            member.channel().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 检索请求把读超时收紧到 deadline；上传等其他请求沿用客户端上更宽的默认值
+     */
+    private record SearchTimeoutInterceptor(int deadlineMillis) implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            if (chain.request().url().encodedPath().endsWith("/search")) {
+                chain = chain.withReadTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+                        .withWriteTimeout(deadlineMillis, TimeUnit.MILLISECONDS);
+            }
+            return chain.proceed(chain.request());
+        }
+    }
+
+    /**
+     * 没有 deadline 的 gRPC 调用补上默认 deadline
+     * 调用方在 gRPC Context 里带了 deadline 的话，gRPC 会自动取两者中更早的那个
+     */
+    private record DeadlineInterceptor(long deadlineMillis) implements ClientInterceptor {
+        @Override
+        public <Q, R> ClientCall<Q, R> interceptCall(MethodDescriptor<Q, R> method, CallOptions callOptions, Channel next) {
+            if (callOptions.getDeadline() == null) {
+                callOptions = callOptions.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+            }
+            return next.newCall(method, callOptions);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.swy.zuelfinmind.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 🏃 投机预取：用户还在打字时，先拿草稿把历史记录和检索结果准备好
+ * 结果放在每个用户一个的短期槽位里，真正发送的问题和草稿一样或者差不多时直接拿来用
+ */
+@Service
+public class PrefetchService {
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchService.class);
+
+    private static final String SLOT_KEY_PREFIX = "finmind:prefetch:";
+
+    // 草稿太短时还看不出在问什么，不值得预取
+    private static final int MIN_DRAFT_LENGTH = 4;
+
+    // 槽位只保留一小会儿，用户打完字一般几秒内就会发送
+    @Value("${finmind.prefetch.ttl-seconds:30}")
+    private int ttlSeconds;
+
+    // 每个用户同时最多跑几个预取（打字很快时多余的草稿直接丢掉）
+    @Value("${finmind.prefetch.max-per-user:1}")
+    private int maxPerUser;
+
+    // 草稿和最终问题的关键词重合度（Jaccard）达到多少算“差不多”
+    @Value("${finmind.prefetch.match-threshold:0.8}")
+    private double matchThreshold;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Reranker reranker;
+
+    private final RetrievalCacheService retrievalCache;
+
+    // 本实例上每个用户正在跑的预取数
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter started;
+    private final Counter throttled;
+    private final Counter hits;
+    private final Counter mismatches;
+    private final Counter empty;
+
+    /**
+     * 槽位内容：草稿原文、当时的知识库版本、检索结果
+     */
+    record Slot(String draft, String version, List<String> chunks) {}
+
+    public PrefetchService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper,
+                           Reranker reranker, RetrievalCacheService retrievalCache, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.reranker = reranker;
+        this.retrievalCache = retrievalCache;
+
+        this.started = Counter.builder("finmind.prefetch").tag("result", "started").register(meterRegistry);
+        this.throttled = Counter.builder("finmind.prefetch").tag("result", "throttled").register(meterRegistry);
+        this.hits = Counter.builder("finmind.prefetch.consume").tag("result", "hit").register(meterRegistry);
+        this.mismatches = Counter.builder("finmind.prefetch.consume").tag("result", "mismatch").register(meterRegistry);
+        this.empty = Counter.builder("finmind.prefetch.consume").tag("result", "empty").register(meterRegistry);
+        // 命中数 / 发起的预取数：太低说明预取在白白消耗检索配额
+        Gauge.builder("finmind.prefetch.hit.ratio", this, PrefetchService::hitRatio)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 后台预取，立刻返回
+     * @param warmHistory 加载历史记录（顺带回填 Redis）
+     * @param retrieval   检索 + 重排序
+     * @return false 表示草稿太短或该用户的预取名额已满，这次没有预取
+     */
+    public boolean submit(String userId, String draft, Runnable warmHistory, Supplier<List<String>> retrieval) {
+        if (draft == null || draft.trim().length() < MIN_DRAFT_LENGTH) {
+            return false;
+        }
+        if (!acquire(userId)) {
+            throttled.increment();
+            return false;
+        }
+        started.increment();
+
+        Mono.fromRunnable(() -> {
+                    String version = retrievalCache.currentVersion();
+                    warmHistory.run();
+                    List<String> chunks = retrieval.get();
+                    save(userId, new Slot(draft, version, chunks));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> release(userId))
+                .subscribe(null, e -> log.warn("⚠️ 预取失败 [{}]: {}", userId, e.getMessage()));
+        return true;
+    }
+
+    /**
+     * 取出预取结果（一次性，取完就删）
+     * @return 草稿和最终问题对不上、知识库已更新或者没有预取时返回 null
+     */
+    public List<String> consume(String userId, String message) {
+        Slot slot;
+        try {
+            String json = redisTemplate.opsForValue().getAndDelete(SLOT_KEY_PREFIX + userId);
+            if (json == null) {
+                empty.increment();
+                return null;
+            }
+            slot = objectMapper.readValue(json, Slot.class);
+        } catch (Exception e) {
+            log.error("❌ 读取预取结果失败: {}", e.getMessage());
+            return null;
+        }
+
+        if (!slot.version().equals(retrievalCache.currentVersion()) || !matches(slot.draft(), message)) {
+            mismatches.increment();
+            return null;
+        }
+        hits.increment();
+        System.out.println("🏃 预取命中，跳过向量检索和重排序");
+        return slot.chunks();
+    }
+
+    /**
+     * 归一化后完全一样，或者关键词重合度足够高（只改了标点、语气词、词序这类不影响检索的地方）
+     */
+    boolean matches(String draft, String message) {
+        if (RetrievalCacheService.normalize(draft).equals(RetrievalCacheService.normalize(message))) {
+            return true;
+        }
+        Set<String> a = reranker.keywords(draft);
+        Set<String> b = reranker.keywords(message);
+        if (a.isEmpty() || b.isEmpty()) {
+            return false;
+        }
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        long common = a.stream().filter(b::contains).count();
+        return (double) common / union.size() >= matchThreshold;
+    }
+
+    private void save(String userId, Slot slot) {
+        try {
+            redisTemplate.opsForValue().set(SLOT_KEY_PREFIX + userId, objectMapper.writeValueAsString(slot),
+                    Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            log.error("❌ 预取结果写入失败: {}", e.getMessage());
+        }
+    }
+
+    // 计数的加减都放在 compute 里，判断和修改是原子的；减到 0 就把这个用户移出 Map
+    private boolean acquire(String userId) {
+        AtomicBoolean acquired = new AtomicBoolean(false);
+        inFlight.compute(userId, (k, running) -> {
+            int n = running == null ? 0 : running;
+            if (n >= maxPerUser) {
+                return running;
+            }
+            acquired.set(true);
+            return n + 1;
+        });
+        return acquired.get();
+    }
+
+    private void release(String userId) {
+        inFlight.computeIfPresent(userId, (k, running) -> running <= 1 ? null : running - 1);
+    }
+
+    private double hitRatio() {
+        return started.count() == 0 ? 0 : hits.count() / started.count();
+    }
+}
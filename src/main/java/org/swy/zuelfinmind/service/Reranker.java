@@ -0,0 +1,101 @@
+package org.swy.zuelfinmind.service;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.SegToken;
+import org.springframework.stereotype.Component;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 🧠 核心算法：内存重排序 (Hybrid Rerank)
+ * 结合了“向量相似度”和“关键词匹配度”
+ * 从 DeepSeekService 里拆出来，离线评测可以直接 new 一个，用不同参数反复跑
+ */
+@Component
+public class Reranker {
+
+    // 实例化分词器（线程安全，可以做成成员变量）
+    private final JiebaSegmenter segmenter =  new JiebaSegmenter();
+
+    // 定义停用词表 (过滤掉没用的字，防止噪音干扰)
+    private static final Set<String> STOP_WORDS = Set.of(
+            "的", "了", "和", "是", "就", "都", "而", "及", "与", "在", "这", "那", "有", "什么", "怎么", "我", "你", "它"
+             // 可选：如果每个文档都有ZUEL，那它就不是区分特征，可以过滤
+    );
+
+    private final RetrievalProperties properties;
+
+    public Reranker(RetrievalProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 🔄 修复版 Rerank：引入真正的中文分词
+     */
+    public List<String> rerank(List<VectorSearchResult> candidates, String userMessage) {
+        return rerank(candidates, userMessage, true);
+    }
+
+    // verbose=false 时不打印每条候选的得分（预热、评测时会跑很多遍）
+    public List<String> rerank(List<VectorSearchResult> candidates, String userMessage, boolean verbose) {
+
+        // 简单分词：把用户问题按空格或标点切开（简易版，不需要引入 Jieba）
+        // 比如“ZUEL新增了什么实验班” -> ["ZUEL", "新增", "了", "什么", "实验班"]
+//        String[] keywords = userMessage.split("[\\s,?.!，。？！]+");
+
+        Set<String> keywords = keywords(userMessage);
+
+        return candidates.stream()
+                .map(candidate -> {
+                    long hitCounts = keywords.stream()
+                            .filter(keyword -> candidate.getText().contains(keyword))
+                            .count();
+
+                    double keywordScore = Math.min(hitCounts / (double) properties.getKeywordSaturation(), 1.0);
+
+                    float score = (float) ((candidate.getScore() * properties.getVectorWeight())
+                            + (keywordScore * properties.getKeywordWeight()));
+
+                    if (verbose) {
+                        System.out.printf("文本前缀：%s | 原始向量得分：%.2f | 关键词命中数：%d | 最终得分：%.2f \n",
+                                candidate.getText().substring(0, Math.min (candidate.getText().length (), 20)), // 更长前缀，避免越界
+                                candidate.getScore(),
+                                hitCounts,
+                                score);
+                    }
+
+                    return new VectorSearchResult(candidate.getText(), score, candidate.getSource());
+                })
+                .filter(candidate -> candidate.getScore() > properties.getRerankCutoff())// 智谱0.4，集成0.65
+                .sorted((a,b) -> Float.compare(b.getScore(), a.getScore()))
+                .limit(properties.getRerankLimit())
+                .map(VectorSearchResult::getText)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 提取关键词
+     */
+    public Set<String> keywords(String userMessage) {
+        // --- 🟢 变化点 1：使用结巴分词 ---
+        // SegMode.SEARCH 用于搜索引擎模式，切得比较细
+        List<SegToken> tokens = segmenter.process(userMessage, JiebaSegmenter.SegMode.SEARCH);
+
+        // 提取关键词列表
+        // 核心优化：将 List 转为 HashSet，把 contains 方法的时间复杂度从 O(n) 降到 O(1)
+        Set<String> keywords = new HashSet<>();
+        for (SegToken token : tokens) {
+            String word = token.word;
+            // 过滤规则：长度大于1且不在停用此表中
+            if (word.length() > 1 && !STOP_WORDS.contains(word)) {
+                keywords.add(word);
+            }
+        }
+        return keywords;
+    }
+}
@@ -0,0 +1,150 @@
+package org.swy.zuelfinmind.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 📦 检索结果缓存：缓存“向量检索 + 重排序”之后的最终资料块
+ * Key = 知识库版本号 + 归一化问题的哈希。上传新资料时版本号 +1，旧缓存自然失效，不用扫描删除
+ */
+@Service
+public class RetrievalCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalCacheService.class);
+
+    private static final String VERSION_KEY = "finmind:kb:version";
+    private static final String CACHE_KEY_PREFIX = "finmind:rag:";
+
+    // 旧版本的缓存没人再读，靠过期自动清理
+    private static final Duration CACHE_TTL = Duration.ofHours(1);
+    // 空结果可能只是一次检索超时、重排序全被筛掉之类的偶发情况，只短暂缓存，避免这个问题一小时内都查不到资料
+    private static final Duration EMPTY_TTL = Duration.ofSeconds(30);
+
+    // Pinecone 写入后要过几秒才能搜到，这期间算出的结果可能是旧的，过一会儿再升一次版本兜底
+    private static final Duration INDEX_LAG = Duration.ofSeconds(10);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter savedMillis;
+    private final Timer computeTimer;
+
+    public RetrievalCacheService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+
+        this.hits = Counter.builder("finmind.rag.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("finmind.rag.cache").tag("result", "miss").register(meterRegistry);
+        this.savedMillis = Counter.builder("finmind.rag.cache.saved")
+                .description("缓存命中省下的检索+重排序耗时（按未命中时的平均耗时估算）")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.computeTimer = Timer.builder("finmind.rag.compute")
+                .description("未命中时向量检索+重排序的耗时")
+                .register(meterRegistry);
+        Gauge.builder("finmind.rag.cache.hit.ratio", this, RetrievalCacheService::hitRatio)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 先查缓存，没有再算，算完写回
+     */
+    public List<String> getOrCompute(String query, Supplier<List<String>> compute) {
+        String key = null;
+        try {
+            key = CACHE_KEY_PREFIX + currentVersion() + ":" + hash(normalize(query));
+            String cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                hits.increment();
+                savedMillis.increment(computeTimer.mean(TimeUnit.MILLISECONDS));
+                System.out.println("📦 检索缓存命中，跳过向量检索和重排序");
+                return objectMapper.readValue(cached, new TypeReference<List<String>>() {});
+            }
+        } catch (Exception e) {
+            log.error("❌ 检索缓存读取失败，直接检索: {}", e.getMessage());
+        }
+
+        misses.increment();
+        List<String> chunks = computeTimer.record(compute);
+
+        if (key != null) {
+            try {
+                // 空结果也缓存（连发几遍同样的闲聊不用每次都查），但只缓存很短时间
+                redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(chunks),
+                        chunks.isEmpty() ? EMPTY_TTL : CACHE_TTL);
+            } catch (Exception e) {
+                log.error("❌ 检索缓存写入失败: {}", e.getMessage());
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * 知识库有变化（上传成功）时调用：INCR 是原子的，多实例同时上传也不会丢版本
+     * 上传失败不要调用，否则所有缓存白白作废
+     */
+    public void bumpVersion() {
+        incrementVersion();
+        // Mono.delay 默认在 parallel 调度器上回调，INCR 是阻塞调用，切到 boundedElastic 再执行
+        Mono.delay(INDEX_LAG)
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(t -> incrementVersion());
+    }
+
+    private void incrementVersion() {
+        try {
+            Long version = redisTemplate.opsForValue().increment(VERSION_KEY);
+            log.info("📦 知识库版本更新为 {}，旧的检索缓存全部失效", version);
+        } catch (Exception e) {
+            log.error("❌ 知识库版本更新失败: {}", e.getMessage());
+        }
+    }
+
+    String currentVersion() {
+        String version = redisTemplate.opsForValue().get(VERSION_KEY);
+        return version == null ? "0" : version;
+    }
+
+    /**
+     * 归一化：大小写、多余空白、句尾标点不影响检索结果
+     */
+    static String normalize(String query) {
+        return query.trim()
+                .toLowerCase()
+                .replaceAll("\\s+", " ")
+                .replaceAll("[\\p{Punct}？！。，、；：]+$", "");
+    }
+
+    private static String hash(String text) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
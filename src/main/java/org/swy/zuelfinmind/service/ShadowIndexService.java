@@ -0,0 +1,103 @@
+package org.swy.zuelfinmind.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.strategy.EmbeddingProfileRegistry;
+import org.swy.zuelfinmind.service.strategy.impl.ZhipuVectorStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 👥 影子索引：不同维度的索引和线上索引“并排”跑
+ * 上传时由入库任务在主索引之后写入，检索时一起查，只记录耗时和与线上结果的重合度，结果不会进入回答
+ */
+@Service
+public class ShadowIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShadowIndexService.class);
+
+    private final EmbeddingProfileRegistry registry;
+
+    private final MeterRegistry meterRegistry;
+
+    public ShadowIndexService(EmbeddingProfileRegistry registry, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return !registry.shadows().isEmpty();
+    }
+
+    /**
+     * 写入影子索引（内容已经解析好，这里只做切块和向量化）
+     * 同步执行，由入库任务在主索引写完后调用：全部写完才能 ack，失败的 profile 跟着任务一起重试
+     * @param skip     已经写成功的 profile，任务重试时不再重复写
+     * @param stored   某个 profile 写入成功后回调，调用方记下来供下次重试跳过
+     * @param progress 每传完一批回调一次，调用方用来续期锁和队列租约
+     * @throws RuntimeException 任意一个 profile 写入失败
+     */
+    public void shadowStore(String source, String content, Set<String> skip, Consumer<String> stored,
+                            BiConsumer<Integer, Integer> progress) {
+        RuntimeException failure = null;
+        for (ZhipuVectorStore store : registry.shadows()) {
+            String profile = store.getProfile().getName();
+            if (skip.contains(profile)) {
+                continue;
+            }
+            try {
+                // 用会抛异常的版本，失败了不能记成已完成
+                String result = store.storeText(source, content, progress);
+                stored.accept(profile);
+                log.info("👥 影子索引 [{}]: {}", profile, result);
+            } catch (RuntimeException e) {
+                // 一个 profile 失败不影响其他 profile，最后统一抛出让任务重试
+                log.error("❌ 影子索引 [{}] 写入失败: {}", profile, e.getMessage());
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 后台查询所有影子索引，记录检索耗时，以及线上结果有多少也出现在影子结果里
+     */
+    public void shadowSearch(String query, List<VectorSearchResult> primary) {
+        Set<String> primaryTexts = primary.stream().map(VectorSearchResult::getText).collect(Collectors.toSet());
+        for (ZhipuVectorStore store : registry.shadows()) {
+            String profile = store.getProfile().getName();
+            Timer timer = Timer.builder("finmind.embedding.search")
+                    .tag("profile", profile)
+                    .description("影子索引检索耗时（含查询向量化）")
+                    .register(meterRegistry);
+            Mono.fromCallable(() -> timer.recordCallable(() -> store.search(query)))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(results -> {
+                        if (primaryTexts.isEmpty()) return;
+                        long hits = results.stream().filter(r -> primaryTexts.contains(r.getText())).count();
+                        DistributionSummary.builder("finmind.embedding.shadow.overlap")
+                                .tag("profile", profile)
+                                .description("线上检索结果在影子结果中的占比")
+                                .register(meterRegistry)
+                                .record((double) hits / primaryTexts.size());
+                    }, e -> log.error("❌ 影子索引 [{}] 检索失败: {}", profile, e.getMessage()));
+        }
+    }
+}
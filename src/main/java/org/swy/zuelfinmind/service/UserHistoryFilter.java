@@ -0,0 +1,421 @@
+package org.swy.zuelfinmind.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.swy.zuelfinmind.config.ChatSchemaInitializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 🌸 “这个用户肯定没有历史记录”的快速判断，省掉新用户、不活跃用户每条消息一次的 MySQL 查询
+ * 1. 布隆过滤器（Redis Bitmap）：记录热表里出现过的所有 user_id，说“没有”就一定没有
+ * 2. 空结果缓存：查过 MySQL 确实为空的用户，短时间内不再查（兜住布隆过滤器的误判）
+ *
+ * 启动时全量重建（ApplicationRunner，在预热之前），之后每次保存对话时增量写入
+ * 位图只在参数（位数:哈希数）和 META 一致时可信：滚动发布或改了配置时，参数不同的实例写不进也读不到对方的位图
+ */
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE + 1) // 建表之后、预热之前
+public class UserHistoryFilter implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(UserHistoryFilter.class);
+
+    // 花括号是 Redis Cluster 的 hash tag，保证两个 Key 在同一个槽，Lua 脚本里可以一起操作
+    private static final String BLOOM_KEY = "finmind:bloom:{history-users}";
+    private static final String BUILDING_KEY = "finmind:bloom:{history-users}:building";
+    // 记录当前位图是按什么参数、什么时候建的（bits:hashes@重建开始时间），参数对不上就不能用
+    private static final String META_KEY = "finmind:bloom:{history-users}:meta";
+    // 正在建的位图用的参数：重建期间有参数不同的实例写入，就删掉它，这次重建作废
+    private static final String BUILDING_META_KEY = "finmind:bloom:{history-users}:building:meta";
+    private static final String LOCK_KEY = "finmind:bloom:{history-users}:lock";
+    private static final Duration LOCK_TTL = Duration.ofMinutes(10);
+
+    // 每个用户一个标记：1 = 查过库确实为空，0 = 刚保存过对话
+    // 保存对话时写 0 而不是直接删 Key：查库为空和保存对话并发时，晚到的“空”用 SET NX 写不进去，
+    // 不会出现刚有了历史却被一个过时的空标记挡住整整一个 TTL
+    private static final String EMPTY_KEY_PREFIX = "finmind:history:empty:";
+    private static final String EMPTY_MARKER = "1";
+    private static final String PRESENT_MARKER = "0";
+
+    private static final int REBUILD_BATCH = 1000;
+
+    // 重建期间新保存的用户要同时写进正在建的位图，否则 RENAME 之后就丢了
+    // 正在建的位图带着 TTL（实例在重建中途挂掉也会自己消失），SETBIT 不会改动已有的 TTL
+    // 位图是按别的参数建的：这个用户的位写不进去，只能删掉 META（正在建的就删 building:meta），
+    // 让所有实例都不再相信它，等下一次重建
+    private static final DefaultRedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>("""
+            local meta = redis.call('GET', KEYS[3])
+            if meta then
+                if string.sub(meta, 1, #ARGV[1] + 1) == ARGV[1] .. '@' then
+                    for i = 2, #ARGV do redis.call('SETBIT', KEYS[1], ARGV[i], 1) end
+                else
+                    redis.call('DEL', KEYS[3])
+                end
+            end
+            if redis.call('EXISTS', KEYS[2]) == 1 then
+                if redis.call('GET', KEYS[4]) == ARGV[1] then
+                    for i = 2, #ARGV do redis.call('SETBIT', KEYS[2], ARGV[i], 1) end
+                else
+                    redis.call('DEL', KEYS[4])
+                end
+            end
+            return 1
+            """, Long.class);
+
+    // 重建收尾：期间没有参数不同的写入才换上新位图
+    private static final DefaultRedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[2]) ~= ARGV[1] then return 0 end
+            redis.call('RENAME', KEYS[1], KEYS[3])
+            redis.call('PERSIST', KEYS[3])
+            redis.call('SET', KEYS[4], ARGV[2])
+            redis.call('DEL', KEYS[2])
+            return 1
+            """, Long.class);
+
+    /**
+     * 一次查询的结论
+     */
+    public enum Lookup {
+        EMPTY,          // 确定没有历史，不用查库
+        BLOOM_POSITIVE, // 过滤器说“可能有”：查库为空就是一次误判
+        UNKNOWN         // 过滤器没建好、被淘汰或者出错，只能查库（查库为空也不算误判）
+    }
+
+    @Value("${finmind.history.bloom.enabled:true}")
+    private boolean enabled;
+
+    // 空结果缓存多久：新用户发第一条消息之前一般会连着发几条，10 分钟足够
+    @Value("${finmind.history.empty-ttl-seconds:600}")
+    private int emptyTtlSeconds;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 位图大小（bit）和哈希函数个数，由预计用户数和目标误判率算出来
+    private final long bits;
+    private final int hashes;
+    private final String params;
+
+    // 本实例往位图写失败的时间：在这之后才开始的重建才包含这些用户，之前建的位图不能再信
+    private volatile long distrustBefore;
+
+    private volatile long expectedInsertions;
+
+    private final Counter avoidedByBloom;
+    private final Counter avoidedByEmptyCache;
+    private final Counter bloomNegatives;
+    private final Counter falsePositives;
+
+    public UserHistoryFilter(RedisTemplate<String, String> redisTemplate, JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${finmind.history.bloom.expected-users:100000}") long expectedUsers,
+                             @Value("${finmind.history.bloom.fpp:0.01}") double fpp) {
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+
+        // m = -n·ln(p) / (ln2)²，k = m/n·ln2；Redis 位图最多 2^32 位，最后一位留给哨兵
+        long m = (long) Math.ceil(-expectedUsers * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bits = Math.min(Math.max(m, 64), (1L << 32) - 1);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedUsers * Math.log(2)));
+        this.params = bits + ":" + hashes;
+
+        this.avoidedByBloom = Counter.builder("finmind.history.db.avoided").tag("reason", "bloom").register(meterRegistry);
+        this.avoidedByEmptyCache = Counter.builder("finmind.history.db.avoided").tag("reason", "empty-cache").register(meterRegistry);
+        this.bloomNegatives = Counter.builder("finmind.history.bloom.negative").register(meterRegistry);
+        this.falsePositives = Counter.builder("finmind.history.bloom.false.positive")
+                .description("布隆过滤器说“可能有”但 MySQL 里其实没有")
+                .register(meterRegistry);
+        // 实测误判率 = 误判数 / (误判数 + 判定为没有的数)
+        Gauge.builder("finmind.history.bloom.fpp", this, UserHistoryFilter::observedFpp).register(meterRegistry);
+        // 理论误判率 (1 - e^(-kn/m))^k，n 取上次重建时的用户数
+        Gauge.builder("finmind.history.bloom.expected.fpp", this, UserHistoryFilter::expectedFpp).register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuildIfIdle();
+    }
+
+    /**
+     * 拿到锁才重建：启动时调用一次，归档搬走一批用户后再调用一次（被搬走的用户要从过滤器里清掉）
+     */
+    public void rebuildIfIdle() {
+        if (!enabled) {
+            return;
+        }
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", LOCK_TTL);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("🌸 其他实例正在重建布隆过滤器，沿用现有位图");
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // 建不出来就当没有过滤器，所有请求照常查库
+            log.error("❌ 布隆过滤器重建失败: {}", e.getMessage());
+            redisTemplate.delete(BUILDING_KEY);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    /**
+     * 先在临时 Key 上建好再 RENAME，重建过程中旧位图照常可用
+     */
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        redisTemplate.delete(BUILDING_KEY);
+        // 先写参数再建 Key：PUT_SCRIPT 看到临时 Key 时一定能核对参数
+        redisTemplate.opsForValue().set(BUILDING_META_KEY, params, LOCK_TTL);
+        // 先把 Key 建出来，让 PUT_SCRIPT 知道正在重建；顺便设置哨兵位
+        redisTemplate.opsForValue().setBit(BUILDING_KEY, bits, true);
+        // 和锁同样的 TTL：重建到一半挂了，临时 Key 不会一直留着让每次保存对话都多写一份
+        redisTemplate.expire(BUILDING_KEY, LOCK_TTL);
+
+        List<String> batch = new ArrayList<>(REBUILD_BATCH);
+        long[] count = {0};
+        // DISTINCT user_id 直接扫 idx_user_time 索引
+        jdbcTemplate.query("SELECT DISTINCT user_id FROM " + ChatSchemaInitializer.HOT_TABLE, (RowCallbackHandler) rs -> {
+            batch.add(rs.getString(1));
+            count[0]++;
+            if (batch.size() >= REBUILD_BATCH) {
+                setBits(BUILDING_KEY, batch);
+                batch.clear();
+            }
+        });
+        setBits(BUILDING_KEY, batch);
+
+        // RENAME 会把临时 Key 的 TTL 一起带过来，正式位图要永久保留（脚本里 PERSIST）
+        Long finished = redisTemplate.execute(FINISH_SCRIPT,
+                List.of(BUILDING_KEY, BUILDING_META_KEY, BLOOM_KEY, META_KEY), params, params + "@" + start);
+        if (!Long.valueOf(1).equals(finished)) {
+            log.warn("⚠️ 重建期间有参数不同的实例写入，本次位图作废，所有请求照常查库");
+            redisTemplate.delete(BUILDING_KEY);
+            return;
+        }
+        expectedInsertions = count[0];
+        log.info("🌸 布隆过滤器重建完成：{} 个用户，{} KB，{} 个哈希，理论误判率 {}，耗时 {} ms",
+                count[0], bits / 8 / 1024, hashes, String.format("%.4f", expectedFpp()), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return EMPTY 表示可以确定这个用户没有任何历史记录，不用查库；其余情况都要查库，
+     *         查完为空时把结论原样传给 markEmpty
+     */
+    public Lookup lookup(String userId) {
+        if (!enabled) {
+            return Lookup.UNKNOWN;
+        }
+        try {
+            Lookup bloom = bloomLookup(userId);
+            if (bloom == Lookup.EMPTY) {
+                bloomNegatives.increment();
+                avoidedByBloom.increment();
+                return Lookup.EMPTY;
+            }
+            if (EMPTY_MARKER.equals(redisTemplate.opsForValue().get(EMPTY_KEY_PREFIX + userId))) {
+                avoidedByEmptyCache.increment();
+                return Lookup.EMPTY;
+            }
+            return bloom;
+        } catch (Exception e) {
+            log.error("❌ 布隆过滤器查询失败，照常查库: {}", e.getMessage());
+            return Lookup.UNKNOWN;
+        }
+    }
+
+    /**
+     * 查过库确实为空：记一笔空结果缓存
+     * 只有这次查询时过滤器真的说了“可能有”才算误判（过滤器没就绪、哨兵位丢失、查询出错都不算）
+     */
+    public void markEmpty(String userId, Lookup lookup) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (lookup == Lookup.BLOOM_POSITIVE) {
+                falsePositives.increment();
+            }
+            // NX：查库期间有新对话保存进来的话，这里已经是 0 了，不能覆盖
+            redisTemplate.opsForValue().setIfAbsent(EMPTY_KEY_PREFIX + userId, EMPTY_MARKER, Duration.ofSeconds(emptyTtlSeconds));
+        } catch (Exception e) {
+            log.error("❌ 空结果缓存写入失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 保存了新对话：加入过滤器，空结果标记改成“有历史”（顺带挡住正在查库的请求写入过时的空标记）
+     */
+    public void markPresent(String userId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> args = new ArrayList<>(hashes + 1);
+            args.add(params);
+            for (long offset : offsets(userId)) {
+                args.add(String.valueOf(offset));
+            }
+            redisTemplate.execute(PUT_SCRIPT, List.of(BLOOM_KEY, BUILDING_KEY, META_KEY, BUILDING_META_KEY), args.toArray());
+            redisTemplate.opsForValue().set(EMPTY_KEY_PREFIX + userId, PRESENT_MARKER, Duration.ofSeconds(emptyTtlSeconds));
+        } catch (Exception e) {
+            // 对话已经落库，位却没写进去：现有位图会把这个用户判成“没有”，本实例不再信它，等下一次重建
+            distrustBefore = System.currentTimeMillis();
+            log.error("❌ 布隆过滤器写入失败，重建之前照常查库: {}", e.getMessage());
+            try {
+                redisTemplate.delete(EMPTY_KEY_PREFIX + userId);
+            } catch (Exception ignored) {
+                // Redis 整个不可用时 lookup 本来就会出错退回查库
+            }
+        }
+    }
+
+    /**
+     * 现有位图是否可用（缺失、参数不同、或者本实例写失败过）：不可用时归档任务顺手重建
+     */
+    public boolean needsRebuild() {
+        if (!enabled) {
+            return false;
+        }
+        return !trusted(redisTemplate.opsForValue().get(META_KEY));
+    }
+
+    private Lookup bloomLookup(String userId) {
+        long[] offsets = offsets(userId);
+        byte[] key = BLOOM_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] metaKey = META_KEY.getBytes(StandardCharsets.UTF_8);
+        // META + 哨兵位 + k 次 GETBIT 一次往返：每次都核对参数，别的实例换了参数重建马上就能发现
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(metaKey);
+            connection.stringCommands().getBit(key, bits);
+            for (long offset : offsets) {
+                connection.stringCommands().getBit(key, offset);
+            }
+            return null;
+        });
+        if (!trusted((String) results.get(0))) {
+            // 还没建好、按别的参数建的，或者本实例写失败过：用错参数探测会把有历史的用户判成“没有”
+            return Lookup.UNKNOWN;
+        }
+        if (!Boolean.TRUE.equals(results.get(1))) {
+            // 哨兵位是 0：位图被淘汰或者被删了，全是 0 的位图会把所有人都判成“没有”，不能信
+            return Lookup.UNKNOWN;
+        }
+        for (Object bit : results.subList(2, results.size())) {
+            if (!Boolean.TRUE.equals(bit)) {
+                return Lookup.EMPTY;
+            }
+        }
+        return Lookup.BLOOM_POSITIVE;
+    }
+
+    private void setBits(String key, List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : userIds) {
+                for (long offset : offsets(userId)) {
+                    connection.stringCommands().setBit(rawKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * META 形如 bits:hashes@重建开始时间：参数一致，并且是在本实例上次写失败之后才开始建的
+     */
+    boolean trusted(String meta) {
+        if (meta == null) {
+            return false;
+        }
+        int at = meta.indexOf('@');
+        if (at < 0 || !params.equals(meta.substring(0, at))) {
+            return false;
+        }
+        try {
+            return Long.parseLong(meta.substring(at + 1)) > distrustBefore;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 双重哈希：h1 + i·h2 模拟 k 个独立哈希函数
+     */
+    long[] offsets(String userId) {
+        long h1 = fmix64(fnv1a64(userId.getBytes(StandardCharsets.UTF_8)));
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L) | 1; // 奇数，避免步长为 0
+        long[] offsets = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, bits);
+        }
+        return offsets;
+    }
+
+    private static long fnv1a64(byte[] data) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 的 finalizer，把 FNV 的结果充分打散
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private double observedFpp() {
+        double total = falsePositives.count() + bloomNegatives.count();
+        return total == 0 ? 0 : falsePositives.count() / total;
+    }
+
+    private double expectedFpp() {
+        return expectedFpp(hashes, expectedInsertions, bits);
+    }
+
+    /**
+     * 理论误判率 (1 - e^(-kn/m))^k
+     */
+    static double expectedFpp(int hashes, long insertions, long bits) {
+        if (insertions == 0) {
+            return 0;
+        }
+        return Math.pow(1 - Math.exp(-(double) hashes * insertions / bits), hashes);
+    }
+
+    long bits() {
+        return bits;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+}
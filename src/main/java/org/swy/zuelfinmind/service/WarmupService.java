@@ -0,0 +1,136 @@
+package org.swy.zuelfinmind.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.pinecone.clients.Index;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.swy.zuelfinmind.model.HistoryNode;
+import org.swy.zuelfinmind.service.codec.HistoryCodecs;
+import org.swy.zuelfinmind.service.strategy.impl.PineconeVectorStore;
+import org.swy.zuelfinmind.utils.DocumentUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 🔥 启动预热：把第一次请求才会触发的懒加载（结巴词典、Tika、Pinecone 连接、Redis/MySQL 连接池）提前做掉
+ * ApplicationRunner 在 Spring Boot 发布 ReadinessState.ACCEPTING_TRAFFIC 之前执行，
+ * 所以预热没跑完之前 /actuator/health/readiness 不会变成 UP，Pod 不会接到流量
+ */
+@Service
+public class WarmupService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupService.class);
+
+    // 预热用的虚拟用户，不会和真实用户冲突
+    private static final String WARMUP_USER = "__warmup__";
+
+    @Value("${finmind.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 重排序、序列化跑多少遍，足够让 C2 编译热点方法
+    @Value("${finmind.warmup.iterations:500}")
+    private int iterations;
+
+    private final DeepSeekService deepSeekService;
+
+    private final ChatHistoryService historyService;
+
+    private final PineconeVectorStore vectorStore;
+
+    private final PineconeIndexPool indexPool;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final HistoryCodecs historyCodecs;
+
+    private final MeterRegistry meterRegistry;
+
+    public WarmupService(DeepSeekService deepSeekService, ChatHistoryService historyService,
+                         PineconeVectorStore vectorStore, PineconeIndexPool indexPool,
+                         RedisTemplate<String, String> redisTemplate, HistoryCodecs historyCodecs,
+                         MeterRegistry meterRegistry) {
+        this.deepSeekService = deepSeekService;
+        this.historyService = historyService;
+        this.vectorStore = vectorStore;
+        this.indexPool = indexPool;
+        this.redisTemplate = redisTemplate;
+        this.historyCodecs = historyCodecs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 到这里 Spring 容器已经启动完毕，JVM 运行时间就是容器启动耗时
+        long contextMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        Map<String, Long> report = new LinkedHashMap<>();
+
+        if (enabled) {
+            step(report, "jieba+rerank", () -> deepSeekService.warmUp(iterations));
+            step(report, "tika", DocumentUtils::warmUp);
+            step(report, "redis", () -> redisTemplate.hasKey("finmind:warmup"));
+            step(report, "mysql+history", () -> historyService.warmUp(WARMUP_USER));
+            // 池里每条连接都握一次手，不然第一次轮到它的请求要多等一次 TLS 握手
+            step(report, "pinecone-grpc", () -> indexPool.forEach(Index::describeIndexStats));
+            step(report, "pinecone-search", () -> vectorStore.search("ZUEL在哪里？"));
+            step(report, "serialization", this::warmUpSerialization);
+        }
+
+        long warmupMillis = report.values().stream().mapToLong(Long::longValue).sum();
+        long totalMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        // 启动耗时报告：日志里看一眼，同时作为指标暴露，方便对比 CDS 开启前后的效果
+        StringBuilder sb = new StringBuilder("\n🚀 启动耗时报告\n");
+        sb.append(String.format("  %-16s %6d ms%n", "context", contextMillis));
+        report.forEach((name, millis) -> sb.append(String.format("  %-16s %6d ms%n", "warmup/" + name, millis)));
+        sb.append(String.format("  %-16s %6d ms%n", "total", totalMillis));
+        log.info(sb.toString());
+
+        registerStartupGauge("context", contextMillis);
+        registerStartupGauge("warmup", warmupMillis);
+        registerStartupGauge("total", totalMillis);
+    }
+
+    private void registerStartupGauge(String phase, long millis) {
+        Gauge.builder("finmind.startup.time", () -> millis)
+                .tag("phase", phase)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 历史记录编解码：短回答和长回答（会触发压缩）各来回转几百遍
+     * 走不记指标的预热入口，finmind.history.codec.* 只反映真实流量
+     */
+    private void warmUpSerialization() throws Exception {
+        HistoryNode shortNode = new HistoryNode("ZUEL在哪里？", "ZUEL位于湖北省武汉市。");
+        HistoryNode longNode = new HistoryNode("介绍一下ZUEL", "中南财经政法大学位于湖北省武汉市。".repeat(50));
+        historyCodecs.warmUp(shortNode, iterations);
+        historyCodecs.warmUp(longNode, iterations);
+    }
+
+    /**
+     * 单个预热步骤失败只记日志，不阻塞启动（比如 Pinecone 暂时连不上，也不能让 Pod 一直起不来）
+     */
+    private void step(Map<String, Long> report, String name, WarmupStep action) {
+        long start = System.currentTimeMillis();
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.warn("⚠️ 预热步骤 [{}] 失败: {}", name, e.getMessage());
+        }
+        report.put(name, System.currentTimeMillis() - start);
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,21 @@
+package org.swy.zuelfinmind.service.codec;
+
+import org.swy.zuelfinmind.model.HistoryNode;
+
+import java.io.IOException;
+
+/**
+ * 历史记录在 Redis 里的编码方式
+ * 每种编码的第一个字节用来区分格式，读取时按第一个字节自动选解码器，新旧格式可以混在同一个列表里
+ */
+public interface HistoryCodec {
+
+    /**
+     * 这个编码能不能解出以 firstByte 开头的数据
+     */
+    boolean supports(byte firstByte);
+
+    byte[] encode(HistoryNode node) throws IOException;
+
+    HistoryNode decode(byte[] data) throws IOException;
+}
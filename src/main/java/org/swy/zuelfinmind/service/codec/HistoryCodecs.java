@@ -0,0 +1,108 @@
+package org.swy.zuelfinmind.service.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.swy.zuelfinmind.model.HistoryNode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 历史记录编解码入口
+ * 写：用 finmind.history.codec 指定的格式（json / smile）
+ * 读：按第一个字节自动识别，老的 JSON 数据照样能读，过期后自然被新格式替换
+ */
+@Component
+public class HistoryCodecs {
+
+    // 每写多少轮对话抽一轮和 JSON 比大小：每次都比等于每次写入多做一遍 JSON 序列化，把省下的 CPU 又吃回去了
+    static final int SAVINGS_SAMPLE_EVERY = 64;
+
+    private final JsonHistoryCodec jsonCodec;
+
+    private final HistoryCodec writeCodec;
+
+    private final List<HistoryCodec> codecs;
+
+    private final Counter bytesSaved;
+    private final DistributionSummary encodedSize;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+
+    private final AtomicLong writes = new AtomicLong();
+
+    public HistoryCodecs(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                         @Value("${finmind.history.codec:smile}") String codec,
+                         @Value("${finmind.history.compress-threshold:512}") int compressThreshold) {
+        this.jsonCodec = new JsonHistoryCodec(objectMapper);
+        SmileHistoryCodec smileCodec = new SmileHistoryCodec(compressThreshold);
+        this.codecs = List.of(smileCodec, jsonCodec);
+        this.writeCodec = "json".equalsIgnoreCase(codec) ? jsonCodec : smileCodec;
+
+        this.bytesSaved = Counter.builder("finmind.history.codec.bytes.saved")
+                .description("相对纯 JSON 省下的字节数（抽样估算）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.encodedSize = DistributionSummary.builder("finmind.history.codec.size")
+                .description("每轮对话编码后的字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.encodeTimer = Timer.builder("finmind.history.codec.encode").register(meterRegistry);
+        this.decodeTimer = Timer.builder("finmind.history.codec.decode").register(meterRegistry);
+    }
+
+    public byte[] encode(HistoryNode node) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = writeCodec.encode(node);
+        encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        encodedSize.record(data.length);
+        if (writeCodec != jsonCodec && writes.getAndIncrement() % SAVINGS_SAMPLE_EVERY == 0) {
+            // 和老格式比一比省了多少：抽样算，按抽样比例放大成总量
+            bytesSaved.increment((double) Math.max(0, jsonCodec.encode(node).length - data.length) * SAVINGS_SAMPLE_EVERY);
+        }
+        return data;
+    }
+
+    public HistoryNode decode(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            throw new IOException("历史记录为空");
+        }
+        long start = System.nanoTime();
+        try {
+            return codecFor(data[0]).decode(data);
+        } finally {
+            decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 启动预热专用：走同样的编解码代码，但不记指标，预热样本不会混进线上的耗时和大小分布
+     */
+    public void warmUp(HistoryNode node, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            byte[] data = writeCodec.encode(node);
+            codecFor(data[0]).decode(data);
+            if (writeCodec != jsonCodec) {
+                // 老格式的读取路径和“省了多少字节”的计算也要热起来
+                jsonCodec.decode(jsonCodec.encode(node));
+            }
+        }
+    }
+
+    private HistoryCodec codecFor(byte firstByte) throws IOException {
+        for (HistoryCodec codec : codecs) {
+            if (codec.supports(firstByte)) {
+                return codec;
+            }
+        }
+        throw new IOException("未知的历史记录格式: 0x" + Integer.toHexString(firstByte & 0xff));
+    }
+}
@@ -0,0 +1,34 @@
+package org.swy.zuelfinmind.service.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.swy.zuelfinmind.model.HistoryNode;
+
+import java.io.IOException;
+
+/**
+ * 老格式：纯 JSON（{"question":..,"answer":..}），没有版本字节，第一个字节就是 '{'
+ * 保留它是为了读懂升级前已经存在 Redis 里的数据
+ */
+public class JsonHistoryCodec implements HistoryCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonHistoryCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean supports(byte firstByte) {
+        return firstByte == '{';
+    }
+
+    @Override
+    public byte[] encode(HistoryNode node) throws IOException {
+        return objectMapper.writeValueAsBytes(node);
+    }
+
+    @Override
+    public HistoryNode decode(byte[] data) throws IOException {
+        return objectMapper.readValue(data, HistoryNode.class);
+    }
+}
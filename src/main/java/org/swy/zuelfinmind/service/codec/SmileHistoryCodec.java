@@ -0,0 +1,70 @@
+package org.swy.zuelfinmind.service.codec;
+
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.swy.zuelfinmind.model.HistoryNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 新格式：[版本字节][Smile 二进制 JSON]
+ * 超过阈值的（长回答）再用 Deflate 压缩一次，短的压缩不划算就不压
+ * 版本字节：0x01 = Smile，0x02 = Smile + Deflate
+ */
+public class SmileHistoryCodec implements HistoryCodec {
+
+    static final byte VERSION_SMILE = 0x01;
+    static final byte VERSION_SMILE_DEFLATE = 0x02;
+
+    private final SmileMapper smileMapper = new SmileMapper();
+
+    // 超过多少字节才压缩
+    private final int compressThreshold;
+
+    public SmileHistoryCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public boolean supports(byte firstByte) {
+        return firstByte == VERSION_SMILE || firstByte == VERSION_SMILE_DEFLATE;
+    }
+
+    @Override
+    public byte[] encode(HistoryNode node) throws IOException {
+        byte[] smile = smileMapper.writeValueAsBytes(node);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(smile.length + 1);
+        if (smile.length > compressThreshold) {
+            out.write(VERSION_SMILE_DEFLATE);
+            // 中文文本压缩比一般在 2~3 倍；BEST_SPEED 的 CPU 开销很小
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater)) {
+                stream.write(smile);
+            } finally {
+                deflater.end(); // 自己传进去的 Deflater 不会随流关闭，要手动释放本地内存
+            }
+        } else {
+            out.write(VERSION_SMILE);
+            out.write(smile);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public HistoryNode decode(byte[] data) throws IOException {
+        byte[] body = Arrays.copyOfRange(data, 1, data.length);
+        if (data[0] == VERSION_SMILE_DEFLATE) {
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+                return smileMapper.readValue(in, HistoryNode.class);
+            }
+        }
+        return smileMapper.readValue(body, HistoryNode.class);
+    }
+}
@@ -0,0 +1,76 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地内存队列：单实例调试、测试用（finmind.ingest.queue=memory）
+ * 语义和 Redis 版一致，但进程重启任务就丢了，也不能跨实例
+ */
+@Component
+@ConditionalOnProperty(name = "finmind.ingest.queue", havingValue = "memory")
+public class InMemoryIngestionQueue implements IngestionQueue {
+
+    private final ConcurrentLinkedQueue<Delivery> ready = new ConcurrentLinkedQueue<>();
+
+    // 已取走未确认的任务 -> 可见性截止时间
+    private final Map<Delivery, Long> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final long visibilityTimeoutMillis;
+
+    public InMemoryIngestionQueue(@Value("${finmind.ingest.visibility-timeout-seconds:120}") int visibilityTimeoutSeconds) {
+        this.visibilityTimeoutMillis = visibilityTimeoutSeconds * 1000L;
+    }
+
+    @Override
+    public void enqueue(String jobId) {
+        ready.add(new Delivery(String.valueOf(sequence.incrementAndGet()), jobId, 0));
+    }
+
+    @Override
+    public Delivery poll(String consumer) {
+        long now = System.currentTimeMillis();
+        // 超时未确认的放回队头之前先处理
+        Iterator<Map.Entry<Delivery, Long>> it = inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Delivery, Long> entry = it.next();
+            if (entry.getValue() <= now && inFlight.remove(entry.getKey(), entry.getValue())) {
+                return take(entry.getKey(), now);
+            }
+        }
+
+        Delivery next = ready.poll();
+        return next == null ? null : take(next, now);
+    }
+
+    @Override
+    public void extend(Delivery delivery, String consumer) {
+        inFlight.replace(delivery, System.currentTimeMillis() + visibilityTimeoutMillis);
+    }
+
+    @Override
+    public void release(Delivery delivery, String consumer, Duration backoff) {
+        inFlight.replace(delivery, System.currentTimeMillis() + backoff.toMillis());
+    }
+
+    @Override
+    public void ack(Delivery delivery) {
+        inFlight.remove(delivery);
+    }
+
+    private Delivery take(Delivery delivery, long now) {
+        Delivery taken = new Delivery(delivery.id(), delivery.jobId(), delivery.deliveryCount() + 1);
+        inFlight.put(taken, now + visibilityTimeoutMillis);
+        return taken;
+    }
+}
@@ -0,0 +1,42 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import java.time.Duration;
+
+/**
+ * 入库任务队列：至少投递一次（at-least-once）
+ * 取走的任务在可见性超时内没有 ack，就会被重新投递给别的 worker（worker 挂了、处理失败等待重试都走这条路）
+ */
+public interface IngestionQueue {
+
+    void enqueue(String jobId);
+
+    /**
+     * 取一个任务：优先认领超时未确认的，其次取新任务
+     * @param consumer 当前 worker 的名字
+     * @return 没有任务时返回 null
+     */
+    Delivery poll(String consumer);
+
+    /**
+     * 续期：处理时间较长的任务要定期调用，否则会被当成超时重新投递
+     * 续期不算一次新的投递，deliveryCount 不变
+     */
+    void extend(Delivery delivery, String consumer);
+
+    /**
+     * 放弃这次投递但不算失败（比如同一个文件正被别人入库）：backoff 之后就能被重新取到，
+     * 不用干等一个完整的可见性超时
+     */
+    void release(Delivery delivery, String consumer, Duration backoff);
+
+    /**
+     * 确认处理完毕（成功，或者失败且不再重试），从队列里删掉
+     */
+    void ack(Delivery delivery);
+
+    /**
+     * @param id            队列内部的消息 ID（Redis Stream 的 entry ID）
+     * @param deliveryCount 第几次投递
+     */
+    record Delivery(String id, String jobId, long deliveryCount) {}
+}
@@ -0,0 +1,165 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.swy.zuelfinmind.model.IngestionJob;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 入库任务的登记和状态管理
+ * 上传的文件本身也先放进 Redis：请求结束后临时文件会被删掉，而且处理它的 worker 可能在另一台机器上
+ */
+@Service
+public class IngestionService {
+
+    private static final String JOB_KEY_PREFIX = "finmind:ingest:job:";
+    private static final String FILE_KEY_PREFIX = "finmind:ingest:file:";
+    // 任务 Hash 里记录影子索引写入进度的字段前缀：shadow:{profile} = done
+    private static final String SHADOW_FIELD_PREFIX = "shadow:";
+    // 主索引已写完时记下结果：只剩影子索引没写完的重试不用再传一遍主索引
+    private static final String PRIMARY_FIELD = "primary";
+
+    // 任务状态保留一天，够前端查结果了
+    private static final Duration JOB_TTL = Duration.ofDays(1);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+
+    private final IngestionQueue queue;
+
+    public IngestionService(RedisTemplate<String, String> redisTemplate,
+                            RedisTemplate<String, byte[]> binaryRedisTemplate, IngestionQueue queue) {
+        this.redisTemplate = redisTemplate;
+        this.binaryRedisTemplate = binaryRedisTemplate;
+        this.queue = queue;
+    }
+
+    /**
+     * 登记任务并入队，立刻返回
+     */
+    public IngestionJob submit(MultipartFile file) throws IOException {
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        binaryRedisTemplate.opsForValue().set(FILE_KEY_PREFIX + jobId, file.getBytes(), JOB_TTL);
+
+        long now = System.currentTimeMillis();
+        IngestionJob job = new IngestionJob();
+        job.setJobId(jobId);
+        job.setSource(file.getOriginalFilename());
+        job.setStatus(IngestionJob.Status.QUEUED);
+        job.setCreateTime(now);
+        job.setUpdateTime(now);
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("source", String.valueOf(job.getSource()));
+        fields.put("status", job.getStatus().name());
+        fields.put("progress", "0");
+        fields.put("attempts", "0");
+        fields.put("createTime", String.valueOf(now));
+        fields.put("updateTime", String.valueOf(now));
+        redisTemplate.opsForHash().putAll(JOB_KEY_PREFIX + jobId, fields);
+        redisTemplate.expire(JOB_KEY_PREFIX + jobId, JOB_TTL);
+
+        // 状态写好了再入队，worker 取到任务时一定查得到
+        queue.enqueue(jobId);
+        return job;
+    }
+
+    /**
+     * @return 任务不存在或已过期时返回 null
+     */
+    public IngestionJob getJob(String jobId) {
+        HashOperations<String, String, String> ops = redisTemplate.opsForHash();
+        Map<String, String> fields = ops.entries(JOB_KEY_PREFIX + jobId);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        IngestionJob job = new IngestionJob();
+        job.setJobId(jobId);
+        job.setSource(fields.get("source"));
+        job.setStatus(IngestionJob.Status.valueOf(fields.get("status")));
+        job.setProgress(Integer.parseInt(fields.getOrDefault("progress", "0")));
+        job.setAttempts(Integer.parseInt(fields.getOrDefault("attempts", "0")));
+        job.setMessage(fields.get("message"));
+        job.setCreateTime(Long.parseLong(fields.getOrDefault("createTime", "0")));
+        job.setUpdateTime(Long.parseLong(fields.getOrDefault("updateTime", "0")));
+        return job;
+    }
+
+    public byte[] loadFile(String jobId) {
+        return binaryRedisTemplate.opsForValue().get(FILE_KEY_PREFIX + jobId);
+    }
+
+    /**
+     * 开始处理，返回这是第几次尝试
+     */
+    public int markRunning(String jobId) {
+        Long attempts = redisTemplate.opsForHash().increment(JOB_KEY_PREFIX + jobId, "attempts", 1);
+        update(jobId, Map.of("status", IngestionJob.Status.RUNNING.name(), "progress", "0"));
+        return attempts == null ? 1 : attempts.intValue();
+    }
+
+    public void progress(String jobId, int percent) {
+        update(jobId, Map.of("progress", String.valueOf(percent)));
+    }
+
+    public void markDone(String jobId, String message) {
+        update(jobId, Map.of("status", IngestionJob.Status.DONE.name(), "progress", "100", "message", message));
+        // 文件已经入库了，原件不用再留
+        binaryRedisTemplate.delete(FILE_KEY_PREFIX + jobId);
+    }
+
+    /**
+     * 主索引已经写完时返回当时的结果，没写完返回 null
+     */
+    public String primaryResult(String jobId) {
+        HashOperations<String, String, String> ops = redisTemplate.opsForHash();
+        return ops.get(JOB_KEY_PREFIX + jobId, PRIMARY_FIELD);
+    }
+
+    public void markPrimaryDone(String jobId, String result) {
+        redisTemplate.opsForHash().put(JOB_KEY_PREFIX + jobId, PRIMARY_FIELD, result);
+    }
+
+    /**
+     * 这个任务已经写入成功的影子索引（按 profile 名）
+     */
+    public Set<String> shadowsDone(String jobId) {
+        HashOperations<String, String, String> ops = redisTemplate.opsForHash();
+        Set<String> done = new HashSet<>();
+        for (String field : ops.keys(JOB_KEY_PREFIX + jobId)) {
+            if (field.startsWith(SHADOW_FIELD_PREFIX)) {
+                done.add(field.substring(SHADOW_FIELD_PREFIX.length()));
+            }
+        }
+        return done;
+    }
+
+    public void markShadowDone(String jobId, String profile) {
+        redisTemplate.opsForHash().put(JOB_KEY_PREFIX + jobId, SHADOW_FIELD_PREFIX + profile, "done");
+    }
+
+    public void markRetrying(String jobId, String message) {
+        update(jobId, Map.of("status", IngestionJob.Status.RETRYING.name(), "message", message));
+    }
+
+    public void markFailed(String jobId, String message) {
+        update(jobId, Map.of("status", IngestionJob.Status.FAILED.name(), "message", message));
+        binaryRedisTemplate.delete(FILE_KEY_PREFIX + jobId);
+    }
+
+    private void update(String jobId, Map<String, String> fields) {
+        Map<String, String> all = new HashMap<>(fields);
+        all.put("updateTime", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(JOB_KEY_PREFIX + jobId, all);
+    }
+}
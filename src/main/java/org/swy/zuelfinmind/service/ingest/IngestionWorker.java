@@ -0,0 +1,220 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.swy.zuelfinmind.model.IngestionJob;
+import org.swy.zuelfinmind.service.RetrievalCacheService;
+import org.swy.zuelfinmind.service.ShadowIndexService;
+import org.swy.zuelfinmind.service.strategy.impl.PineconeVectorStore;
+import org.swy.zuelfinmind.utils.DocumentUtils;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 🏭 入库 worker：从队列取任务，解析 -> 切块 -> 向量化上传
+ * 和聊天接口解耦：API 实例可以关掉 worker（finmind.ingest.worker.enabled=false），
+ * 单独起几个 worker 实例横向扩容，大文件不会再和聊天抢 CPU 和内存
+ */
+@Component
+@ConditionalOnProperty(name = "finmind.ingest.worker.enabled", havingValue = "true", matchIfMissing = true)
+public class IngestionWorker implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionWorker.class);
+
+    // 同一个文件同一时刻只允许一个 worker 入库，避免两份向量互相覆盖到一半
+    private static final String LOCK_KEY_PREFIX = "finmind:ingest:lock:";
+
+    private final IngestionQueue queue;
+
+    private final IngestionService ingestionService;
+
+    private final PineconeVectorStore vectorStore;
+
+    private final ShadowIndexService shadowIndexService;
+
+    private final RetrievalCacheService retrievalCache;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    // 本实例在消费者组里的名字（pid@hostname）
+    private final String consumer = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final int maxAttempts;
+
+    private final Duration visibilityTimeout;
+
+    // 文件正被别的 worker 入库时，多久后再来看看
+    private final Duration lockRetryDelay;
+
+    // 同时处理几个任务
+    private final ExecutorService executor;
+    private final Semaphore slots;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer ingestTimer;
+
+    public IngestionWorker(IngestionQueue queue, IngestionService ingestionService, PineconeVectorStore vectorStore,
+                           ShadowIndexService shadowIndexService, RetrievalCacheService retrievalCache,
+                           RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry,
+                           @Value("${finmind.ingest.worker.concurrency:2}") int concurrency,
+                           @Value("${finmind.ingest.max-attempts:3}") int maxAttempts,
+                           @Value("${finmind.ingest.visibility-timeout-seconds:120}") int visibilityTimeoutSeconds,
+                           @Value("${finmind.ingest.lock-retry-seconds:5}") int lockRetrySeconds) {
+        this.queue = queue;
+        this.ingestionService = ingestionService;
+        this.vectorStore = vectorStore;
+        this.shadowIndexService = shadowIndexService;
+        this.retrievalCache = retrievalCache;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.visibilityTimeout = Duration.ofSeconds(visibilityTimeoutSeconds);
+        this.lockRetryDelay = Duration.ofSeconds(lockRetrySeconds);
+        this.executor = Executors.newFixedThreadPool(concurrency);
+        this.slots = new Semaphore(concurrency);
+        this.ingestTimer = Timer.builder("finmind.ingest.duration")
+                .description("单个文件解析+切块+上传的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 有空闲线程就去队列里取任务
+     */
+    @Scheduled(fixedDelayString = "${finmind.ingest.poll-interval-ms:1000}")
+    public void poll() {
+        while (slots.tryAcquire()) {
+            IngestionQueue.Delivery delivery;
+            try {
+                delivery = queue.poll(consumer);
+            } catch (Exception e) {
+                slots.release();
+                log.error("❌ 读取入库队列失败: {}", e.getMessage());
+                return;
+            }
+            if (delivery == null) {
+                slots.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    process(delivery);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    private void process(IngestionQueue.Delivery delivery) {
+        String jobId = delivery.jobId();
+        IngestionJob job = ingestionService.getJob(jobId);
+        if (job == null || job.getStatus() == IngestionJob.Status.DONE || job.getStatus() == IngestionJob.Status.FAILED) {
+            // 任务过期了，或者是重复投递的已完成任务
+            queue.ack(delivery);
+            return;
+        }
+
+        String lockKey = LOCK_KEY_PREFIX + job.getSource();
+        String token = consumer + ":" + delivery.id();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token, visibilityTimeout);
+        if (!Boolean.TRUE.equals(locked)) {
+            // 不 ack 也不算失败：放回队列，短暂等待后再来，不用干等一个完整的可见性超时
+            queue.release(delivery, consumer, lockRetryDelay);
+            log.info("🔒 [{}] 正在被其他 worker 入库，任务 [{}] {} 秒后重试", job.getSource(), jobId, lockRetryDelay.getSeconds());
+            return;
+        }
+
+        int attempt = ingestionService.markRunning(jobId);
+        log.info("🏭 开始入库 [{}]，任务 [{}]，第 {} 次尝试", job.getSource(), jobId, attempt);
+        long start = System.nanoTime();
+        try {
+            byte[] data = ingestionService.loadFile(jobId);
+            if (data == null) {
+                fail(delivery, "上传的文件已过期");
+                return;
+            }
+            String content = DocumentUtils.parseBytes(job.getSource(), data);
+            if (content.isBlank()) {
+                // 解析不出内容，重试也没用
+                fail(delivery, "文件解析失败或内容为空");
+                return;
+            }
+
+            BiConsumer<Integer, Integer> renew = (done, total) -> {
+                // 每传完一批续一次期，大文件不会被当成超时
+                queue.extend(delivery, consumer);
+                redisTemplate.expire(lockKey, visibilityTimeout);
+            };
+            String result = ingestionService.primaryResult(jobId);
+            if (result == null) {
+                result = vectorStore.storeText(job.getSource(), content, (done, total) -> {
+                    ingestionService.progress(jobId, done * 100 / total);
+                    renew.accept(done, total);
+                });
+                ingestionService.markPrimaryDone(jobId, result);
+                // 知识库变了，旧的检索缓存全部作废（storeText 失败会直接抛异常，走不到这里）
+                retrievalCache.bumpVersion();
+            }
+            if (shadowIndexService.isEnabled()) {
+                // 主索引写完再写影子索引，全部写完才 ack；重试时跳过已经写成功的 profile
+                shadowIndexService.shadowStore(job.getSource(), content, ingestionService.shadowsDone(jobId),
+                        profile -> ingestionService.markShadowDone(jobId, profile), renew);
+            }
+
+            ingestionService.markDone(jobId, result);
+            queue.ack(delivery);
+            meterRegistry.counter("finmind.ingest.jobs", "result", "done").increment();
+            log.info("✅ 入库完成 [{}]: {}", job.getSource(), result);
+        } catch (Exception e) {
+            String primary = ingestionService.primaryResult(jobId);
+            if (attempt >= maxAttempts && primary != null) {
+                // 主索引已经可用，只是影子索引一直写不进去：影子只用于对比，不能因此把任务标成失败
+                ingestionService.markDone(jobId, primary + "（影子索引未写完: " + e.getMessage() + "）");
+                queue.ack(delivery);
+                meterRegistry.counter("finmind.ingest.jobs", "result", "done").increment();
+                log.warn("⚠️ 入库完成 [{}]，但影子索引放弃: {}", job.getSource(), e.getMessage());
+            } else if (attempt >= maxAttempts) {
+                fail(delivery, "❌ 上传失败: " + e.getMessage());
+            } else {
+                // 不 ack：等可见性超时后由任意 worker 重新认领，相当于自带退避
+                ingestionService.markRetrying(jobId, "❌ 第 " + attempt + " 次失败: " + e.getMessage());
+                meterRegistry.counter("finmind.ingest.jobs", "result", "retry").increment();
+                log.warn("⚠️ 入库失败 [{}]，{} 秒后重试: {}", job.getSource(), visibilityTimeout.getSeconds(), e.getMessage());
+            }
+        } finally {
+            ingestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            // 只释放自己加的锁（锁过期后可能已经被别人拿走了）
+            if (token.equals(redisTemplate.opsForValue().get(lockKey))) {
+                redisTemplate.delete(lockKey);
+            }
+        }
+    }
+
+    private void fail(IngestionQueue.Delivery delivery, String message) {
+        ingestionService.markFailed(delivery.jobId(), message);
+        queue.ack(delivery);
+        meterRegistry.counter("finmind.ingest.jobs", "result", "failed").increment();
+        log.error("❌ 入库任务 [{}] 放弃: {}", delivery.jobId(), message);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // 正在处理的任务给一点时间收尾；来不及的没有 ack，会被别的 worker 重新认领
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
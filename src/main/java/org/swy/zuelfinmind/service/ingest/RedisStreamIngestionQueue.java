@@ -0,0 +1,177 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis Stream + 消费者组实现的任务队列（默认）
+ * 已读未确认的消息在 Pending 列表里，空闲时间超过可见性超时就用 XCLAIM 抢过来重新处理
+ */
+@Component
+@ConditionalOnProperty(name = "finmind.ingest.queue", havingValue = "redis", matchIfMissing = true)
+public class RedisStreamIngestionQueue implements IngestionQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisStreamIngestionQueue.class);
+
+    private static final String STREAM_KEY = "finmind:ingest:queue";
+    private static final String GROUP = "ingest-workers";
+    private static final String FIELD_JOB = "job";
+
+    // 分页扫 Pending 列表找超时的：每页多少条，一次 poll 最多翻几页
+    private static final int PENDING_PAGE = 50;
+    private static final int PENDING_MAX_PAGES = 20;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final Duration visibilityTimeout;
+
+    // 消费者组只需要建一次；Redis 被清空后读会报 NOGROUP，到时候再建
+    private volatile boolean groupReady;
+
+    public RedisStreamIngestionQueue(RedisTemplate<String, String> redisTemplate,
+                                     @Value("${finmind.ingest.visibility-timeout-seconds:120}") int visibilityTimeoutSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.visibilityTimeout = Duration.ofSeconds(visibilityTimeoutSeconds);
+    }
+
+    @Override
+    public void enqueue(String jobId) {
+        ensureGroup();
+        redisTemplate.opsForStream().add(STREAM_KEY, Map.of(FIELD_JOB, jobId));
+    }
+
+    @Override
+    public Delivery poll(String consumer) {
+        ensureGroup();
+        StreamOperations<String, String, String> ops = redisTemplate.opsForStream();
+        try {
+            // 1. 超时未确认的：上一个 worker 挂了，或者处理失败在等重试
+            Delivery reclaimed = claimExpired(ops, consumer);
+            if (reclaimed != null) {
+                return reclaimed;
+            }
+
+            // 2. 新任务
+            List<MapRecord<String, String, String>> records = ops.read(
+                    Consumer.from(GROUP, consumer),
+                    StreamReadOptions.empty().count(1),
+                    StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+            if (records == null || records.isEmpty()) {
+                return null;
+            }
+            return toDelivery(records.get(0), 1);
+        } catch (RuntimeException e) {
+            if (String.valueOf(NestedExceptionUtils.getMostSpecificCause(e).getMessage()).contains("NOGROUP")) {
+                groupReady = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 按 ID 顺序分页扫 Pending 列表：前面一直在续期的大任务不会挡住后面超时的任务
+     */
+    private Delivery claimExpired(StreamOperations<String, String, String> ops, String consumer) {
+        String from = null;
+        for (int page = 0; page < PENDING_MAX_PAGES; page++) {
+            // 从上一页最后一条开始（闭区间，这一条要跳过）；不依赖 Redis 6.2 才支持的开区间语法
+            Range<String> range = from == null
+                    ? Range.unbounded()
+                    : Range.of(Range.Bound.inclusive(from), Range.Bound.unbounded());
+            PendingMessages pending = ops.pending(STREAM_KEY, GROUP, range, PENDING_PAGE);
+            for (PendingMessage message : pending) {
+                if (message.getIdAsString().equals(from)
+                        || message.getElapsedTimeSinceLastDelivery().compareTo(visibilityTimeout) < 0) {
+                    continue;
+                }
+                // XCLAIM 带最小空闲时间，多个 worker 同时抢只有一个能成功
+                List<MapRecord<String, String, String>> claimed =
+                        ops.claim(STREAM_KEY, GROUP, consumer, visibilityTimeout, message.getId());
+                if (claimed != null && !claimed.isEmpty()) {
+                    log.info("♻️ 认领超时任务 [{}]，原 worker: {}", message.getIdAsString(), message.getConsumerName());
+                    return toDelivery(claimed.get(0), message.getTotalDeliveryCount() + 1);
+                }
+            }
+            if (pending.size() < PENDING_PAGE) {
+                return null; // 已经扫到底了
+            }
+            from = pending.get(pending.size() - 1).getIdAsString();
+        }
+        return null;
+    }
+
+    @Override
+    public void extend(Delivery delivery, String consumer) {
+        // 认领给自己、最小空闲时间为 0：相当于把空闲时间清零
+        // JUSTID：不返回消息体，也不会增加投递次数，续期再多也不会被当成反复失败
+        claimJustId(consumer, XClaimOptions.minIdle(Duration.ZERO).ids(RecordId.of(delivery.id())));
+    }
+
+    @Override
+    public void release(Delivery delivery, String consumer, Duration backoff) {
+        // 直接把空闲时间设成“还差 backoff 就超时”，backoff 之后 poll 的超时扫描就会认领它
+        Duration idle = visibilityTimeout.minus(backoff);
+        claimJustId(consumer, XClaimOptions.minIdle(Duration.ZERO).ids(RecordId.of(delivery.id()))
+                .idle(idle.isNegative() ? Duration.ZERO : idle));
+    }
+
+    private void claimJustId(String consumer, XClaimOptions options) {
+        redisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands()
+                .xClaimJustId(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP, consumer, options));
+    }
+
+    @Override
+    public void ack(Delivery delivery) {
+        redisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, delivery.id());
+        // 处理完的消息没用了，顺手删掉，Stream 不会越积越长
+        redisTemplate.opsForStream().delete(STREAM_KEY, delivery.id());
+    }
+
+    private Delivery toDelivery(MapRecord<String, String, String> record, long deliveryCount) {
+        return new Delivery(record.getId().getValue(), record.getValue().get(FIELD_JOB), deliveryCount);
+    }
+
+    private void ensureGroup() {
+        if (groupReady) {
+            return;
+        }
+        try {
+            // MKSTREAM：Stream 还不存在时一起创建
+            redisTemplate.execute((RedisCallback<String>) connection -> createGroup(connection));
+        } catch (RuntimeException e) {
+            if (!String.valueOf(NestedExceptionUtils.getMostSpecificCause(e).getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+            // BUSYGROUP：组已经存在
+        }
+        groupReady = true;
+    }
+
+    private String createGroup(RedisConnection connection) {
+        return connection.streamCommands().xGroupCreate(
+                STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true);
+    }
+}
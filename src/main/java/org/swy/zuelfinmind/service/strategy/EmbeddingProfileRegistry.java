@@ -0,0 +1,54 @@
+package org.swy.zuelfinmind.service.strategy;
+
+import ai.z.openapi.ZhipuAiClient;
+import io.pinecone.clients.Index;
+import io.pinecone.configs.PineconeConfig;
+import io.pinecone.configs.PineconeConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.swy.zuelfinmind.config.EmbeddingProperties;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+import org.swy.zuelfinmind.service.strategy.impl.ZhipuEmbedder;
+import org.swy.zuelfinmind.service.strategy.impl.ZhipuVectorStore;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按配置创建每个维度对应的向量库（智谱向量 + 独立的 Pinecone 索引）
+ * 没配 host 的配置只能离线评测用，不会创建 Pinecone 连接
+ */
+@Service
+public class EmbeddingProfileRegistry {
+
+    private final Map<String, ZhipuVectorStore> stores = new LinkedHashMap<>();
+
+    private final List<String> shadow;
+
+    public EmbeddingProfileRegistry(EmbeddingProperties properties, RetrievalProperties retrievalProperties,
+                                    ZhipuAiClient zhipuAiClient, @Value("${YOUR_EDB_KEY}") String apiKey) {
+        for (EmbeddingProfile profile : properties.getProfiles()) {
+            if (profile.getHost() == null || profile.getHost().isBlank()) {
+                continue;
+            }
+            PineconeConfig config = new PineconeConfig(apiKey);
+            config.setHost(profile.getHost());
+            Index index = new Index(config, new PineconeConnection(config), profile.getIndexName());
+            stores.put(profile.getName(), new ZhipuVectorStore(new ZhipuEmbedder(zhipuAiClient, profile), index, retrievalProperties));
+        }
+        this.shadow = properties.getShadow().stream().filter(stores::containsKey).toList();
+    }
+
+    public ZhipuVectorStore get(String name) {
+        return stores.get(name);
+    }
+
+    /**
+     * 需要陪跑的影子索引
+     */
+    public List<ZhipuVectorStore> shadows() {
+        return shadow.stream().map(stores::get).toList();
+    }
+}
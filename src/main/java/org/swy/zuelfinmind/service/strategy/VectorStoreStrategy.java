@@ -4,6 +4,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.swy.zuelfinmind.model.VectorSearchResult;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public interface VectorStoreStrategy {
     /**
@@ -13,6 +14,15 @@ public interface VectorStoreStrategy {
      */
     String store(MultipartFile file);
 
+    /**
+     * 存已经解析好的文本（后台入库任务用）
+     * @param source 来源文件名
+     * @param content 解析出的纯文本
+     * @param progress 每上传完一批回调一次：(已完成块数, 总块数)
+     * @return 成功消息；失败直接抛异常，由调用方决定要不要重试
+     */
+    String storeText(String source, String content, BiConsumer<Integer, Integer> progress);
+
     /**
      * 取资料
      * @param query 用户问题
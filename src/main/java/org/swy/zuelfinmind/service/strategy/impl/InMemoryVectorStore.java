@@ -0,0 +1,119 @@
+package org.swy.zuelfinmind.service.strategy.impl;
+
+import org.springframework.web.multipart.MultipartFile;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.strategy.VectorStoreStrategy;
+import org.swy.zuelfinmind.utils.DocumentUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 纯内存向量库：暴力余弦相似度，没有任何外部依赖
+ * 给离线评测用，结果是“精确”的，可以当作召回率的基准
+ */
+public class InMemoryVectorStore implements VectorStoreStrategy {
+
+    private static final int TOP_K = 20;
+
+    // 文本 -> 向量 的函数，例如 ZhipuEmbedder::embed
+    private final Function<String, List<Float>> embedder;
+
+    // 相似度阈值，对应 PineconeVectorStore 里的过滤条件
+    private final float minScore;
+
+    // 切块参数，和线上 PineconeVectorStore 用同一份配置
+    private final RetrievalProperties properties;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private int dimensions;
+
+    private record Entry(String text, String source, float[] vector) {}
+
+    public InMemoryVectorStore(Function<String, List<Float>> embedder, float minScore, RetrievalProperties properties) {
+        this.embedder = embedder;
+        this.minScore = minScore;
+        this.properties = properties;
+    }
+
+    @Override
+    public String store(MultipartFile file) {
+        return storeText(file.getOriginalFilename(), DocumentUtils.parseFile(file), (done, total) -> {});
+    }
+
+    @Override
+    public String storeText(String source, String content, BiConsumer<Integer, Integer> progress) {
+        List<String> chunks = DocumentUtils.splitText(content, properties.getChunkSize(), properties.getChunkOverlap());
+        for (int i = 0; i < chunks.size(); i++) {
+            add(chunks.get(i), source, embedder.apply(chunks.get(i)));
+            progress.accept(i + 1, chunks.size());
+        }
+        return "✅ 已写入内存 " + chunks.size() + " 块";
+    }
+
+    public void add(String text, String source, List<Float> vector) {
+        if (vector == null) return;
+        float[] normalized = normalize(vector);
+        dimensions = normalized.length;
+        entries.add(new Entry(text, source, normalized));
+    }
+
+    @Override
+    public List<VectorSearchResult> search(String query) {
+        List<Float> queryVector = embedder.apply(query);
+        if (queryVector == null) return List.of();
+        return searchByVector(queryVector, TOP_K);
+    }
+
+    /**
+     * 已经有查询向量时直接检索（评测时查询向量只算一次，反复测检索耗时）
+     */
+    public List<VectorSearchResult> searchByVector(List<Float> queryVector, int topK) {
+        float[] q = normalize(queryVector);
+        return entries.stream()
+                .map(entry -> new VectorSearchResult(entry.text(), dot(q, entry.vector()), entry.source()))
+                .filter(result -> result.getScore() > minScore)
+                .sorted(Comparator.comparing(VectorSearchResult::getScore).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 向量本身占用的内存（float32），不含对象头和文本
+     */
+    public long vectorBytes() {
+        return (long) entries.size() * dimensions * Float.BYTES;
+    }
+
+    // 先归一化，余弦相似度就变成点积
+    private static float[] normalize(List<Float> vector) {
+        float[] v = new float[vector.size()];
+        double norm = 0;
+        for (int i = 0; i < v.length; i++) {
+            v[i] = vector.get(i);
+            norm += v[i] * v[i];
+        }
+        float scale = norm == 0 ? 0 : (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) {
+            v[i] *= scale;
+        }
+        return v;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -16,7 +16,9 @@ import org.openapitools.db_data.client.model.Hit;
 import org.openapitools.db_data.client.model.SearchRecordsResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.swy.zuelfinmind.config.RetrievalProperties;
 import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.PineconeIndexPool;
 import org.swy.zuelfinmind.service.strategy.VectorStoreStrategy;
 import org.swy.zuelfinmind.utils.DocumentUtils;
 
@@ -24,6 +26,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,14 +40,20 @@ public class PineconeVectorStore implements VectorStoreStrategy {
 
     private final ZhipuAiClient zhipuAiClient;
 
-    private final Index index;
+    // 多条连接轮询使用，并发检索不用挤一条连接
+    private final PineconeIndexPool indexPool;
 
     private final ObjectMapper objectMapper;
 
-    public PineconeVectorStore(ZhipuAiClient zhipuAiClient, Index index, ObjectMapper objectMapper) {
+    // 召回条数、相似度阈值、切块参数
+    private final RetrievalProperties properties;
+
+    public PineconeVectorStore(ZhipuAiClient zhipuAiClient, PineconeIndexPool indexPool, ObjectMapper objectMapper,
+                               RetrievalProperties properties) {
         this.zhipuAiClient = zhipuAiClient;
-        this.index = index;
+        this.indexPool = indexPool;
         this.objectMapper = objectMapper;
+        this.properties = properties;
     }
 
 
@@ -183,11 +194,19 @@ public class PineconeVectorStore implements VectorStoreStrategy {
 
     @Override
     public String store(MultipartFile file) {
-        // 1.【解析】
-        String content = DocumentUtils.parseFile(file);
+        try {
+            // 1.【解析】
+            return storeText(file.getOriginalFilename(), DocumentUtils.parseFile(file), (done, total) -> {});
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "❌ 上传失败: " + e.getMessage();
+        }
+    }
 
+    @Override
+    public String storeText(String source, String content, BiConsumer<Integer, Integer> progress) {
         // 2.【切分】
-        List<String> chunks = DocumentUtils.splitText(content, 300, 50);
+        List<String> chunks = DocumentUtils.splitText(content, properties.getChunkSize(), properties.getChunkOverlap());
 
         // 3.【上传】
         ArrayList<Map<String, String>> upsertRecords = new ArrayList<>();
@@ -195,61 +214,74 @@ public class PineconeVectorStore implements VectorStoreStrategy {
         for (int i = 0; i < chunks.size(); i++) {
             HashMap<String, String> record = new HashMap<>();
 
-            record.put("id", file.getOriginalFilename() + "_part_" + i + 1);
+            record.put("id", source + "_part_" + i + 1);
             record.put("text", chunks.get(i));
-            record.put("source", file.getOriginalFilename());
+            record.put("source", source);
 
             upsertRecords.add(record);
         }
 
-        try {
-            index.upsertRecords(NAMESPACE, upsertRecords);
-            return "✅ 成功！已批量上传数据到 Pinecone。";
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "❌ 上传失败: " + e.getMessage();
+        // 集成向量模型单次最多 96 条，分批上传，顺便汇报进度
+        for (int from = 0; from < upsertRecords.size(); from += BATCH_SIZE) {
+            List<Map<String, String>> batch = upsertRecords.subList(from, Math.min(from + BATCH_SIZE, upsertRecords.size()));
+            indexPool.call("upsert", index -> {
+                index.upsertRecords(NAMESPACE, batch);
+                return null;
+            });
+            progress.accept(from + batch.size(), upsertRecords.size());
         }
+        return "✅ 成功！已上传 " + upsertRecords.size() + " 块到 Pinecone。";
     }
 
     @Override
     public List<VectorSearchResult> search(String query) {
+        try {
+            return searchAsync(query).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步检索：在连接池的检索线程里执行，超过 finmind.pinecone.deadline-millis 以 TimeoutException 结束
+     * 调用方可以先把检索发出去，同时做别的事（比如加载历史记录），需要时再 join
+     */
+    public CompletableFuture<List<VectorSearchResult>> searchAsync(String query) {
         List<String> fields = new ArrayList<>();
         fields.add("text");
         fields.add("source");
 
-        try {
-            SearchRecordsResponse response = index.searchRecordsByText(
-                    query,
-                    NAMESPACE,
-                    fields,
-                    20,
-                    null
-                    ,null
-            );
-
-            return response.getResult().getHits().stream()
-                    .filter(match -> match.getScore() > 0.8) // 智谱 0.5，集成模型0.8
-                    .map(match -> {
-                        JsonNode node;
-                        node = objectMapper.valueToTree(match.getFields());
-
-                        String text = node.path("text").asText();
-                        String source = node.path("source").asText();
-
-                        System.out.printf("文本前缀：%s | 原始向量得分：%.2f \n",
-                            text.substring(0, Math.min(text.length(), 10)),
-                            match.getScore());
-
-                        return new VectorSearchResult(
-                                text,
-                                match.getScore(),
-                                source
-                        );
-                    })
-                    .collect(Collectors.toList());
-        } catch (ApiException e) {
-            throw new RuntimeException(e);
-        }
+        return indexPool.callAsync("search", index -> index.searchRecordsByText(
+                        query,
+                        NAMESPACE,
+                        fields,
+                        properties.getTopK(),
+                        null
+                        ,null
+                ))
+                .thenApply(this::toResults);
+    }
+
+    private List<VectorSearchResult> toResults(SearchRecordsResponse response) {
+        return response.getResult().getHits().stream()
+                .filter(match -> match.getScore() > properties.getSearchThreshold()) // 智谱 0.5，集成模型0.8
+                .map(match -> {
+                    JsonNode node;
+                    node = objectMapper.valueToTree(match.getFields());
+
+                    String text = node.path("text").asText();
+                    String source = node.path("source").asText();
+
+                    System.out.printf("文本前缀：%s | 原始向量得分：%.2f \n",
+                        text.substring(0, Math.min(text.length(), 10)),
+                        match.getScore());
 
+                    return new VectorSearchResult(
+                            text,
+                            match.getScore(),
+                            source
+                    );
+                })
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,51 @@
+package org.swy.zuelfinmind.service.strategy.impl;
+
+import ai.z.openapi.ZhipuAiClient;
+import ai.z.openapi.service.embedding.EmbeddingCreateParams;
+import ai.z.openapi.service.embedding.EmbeddingResponse;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 按指定 EmbeddingProfile 调用智谱生成向量
+ */
+public class ZhipuEmbedder {
+
+    private final ZhipuAiClient zhipuAiClient;
+
+    private final EmbeddingProfile profile;
+
+    public ZhipuEmbedder(ZhipuAiClient zhipuAiClient, EmbeddingProfile profile) {
+        this.zhipuAiClient = zhipuAiClient;
+        this.profile = profile;
+    }
+
+    public EmbeddingProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * 调用智谱获取向量（Double转Float），失败返回 null
+     */
+    public List<Float> embed(String text) {
+        try {
+            EmbeddingCreateParams request = new EmbeddingCreateParams();
+            request.setModel(profile.getModel());
+            request.setDimensions(profile.getDimensions());
+            request.setInput(text);
+
+            EmbeddingResponse response = zhipuAiClient.embeddings().createEmbeddings(request);
+
+            if (response.isSuccess()) {
+                // 智谱返回List<Double>,Pinecone需要List<Float>
+                List<Double> doubleList = response.getData().getData().get(0).getEmbedding();
+                return doubleList.stream().map(Double::floatValue).collect(Collectors.toList());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package org.swy.zuelfinmind.service.strategy.impl;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.pinecone.clients.Index;
+import io.pinecone.unsigned_indices_model.QueryResponseWithUnsignedIndices;
+import io.pinecone.unsigned_indices_model.VectorWithUnsignedIndices;
+import org.springframework.web.multipart.MultipartFile;
+import org.swy.zuelfinmind.config.RetrievalProperties;
+import org.swy.zuelfinmind.model.EmbeddingProfile;
+import org.swy.zuelfinmind.model.VectorSearchResult;
+import org.swy.zuelfinmind.service.strategy.VectorStoreStrategy;
+import org.swy.zuelfinmind.utils.DocumentUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 智谱向量 + Pinecone 普通索引：维度由 EmbeddingProfile 决定
+ * 不是 Spring Bean，由 EmbeddingProfileRegistry 按配置逐个创建
+ */
+public class ZhipuVectorStore implements VectorStoreStrategy {
+
+    private static final int BATCH_SIZE = 96;
+
+    private final ZhipuEmbedder embedder;
+
+    private final Index index;
+
+    // 切块参数和主索引共用一份，影子索引切出来的块才能和主索引一一对比
+    private final RetrievalProperties properties;
+
+    public ZhipuVectorStore(ZhipuEmbedder embedder, Index index, RetrievalProperties properties) {
+        this.embedder = embedder;
+        this.index = index;
+        this.properties = properties;
+    }
+
+    public EmbeddingProfile getProfile() {
+        return embedder.getProfile();
+    }
+
+    @Override
+    public String store(MultipartFile file) {
+        return storeText(file.getOriginalFilename(), DocumentUtils.parseFile(file));
+    }
+
+    /**
+     * 已经解析好的文本直接切块入库（影子索引复用主索引解析好的内容，不用再解析一遍）
+     */
+    public String storeText(String source, String content) {
+        if (content == null || content.isEmpty()) return "文件解析失败或内容为空";
+
+        try {
+            return storeText(source, content, (done, total) -> {});
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "❌ 上传失败: " + e.getMessage();
+        }
+    }
+
+    @Override
+    public String storeText(String source, String content, BiConsumer<Integer, Integer> progress) {
+        List<String> chunks = DocumentUtils.splitText(content, properties.getChunkSize(), properties.getChunkOverlap());
+
+        ArrayList<VectorWithUnsignedIndices> upsertList = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            String chunkText = chunks.get(i);
+            List<Float> vector = embedder.embed(chunkText);
+            if (vector != null) {
+                upsertList.add(new VectorWithUnsignedIndices(
+                        source + "_part_" + i + 1,
+                        vector,
+                        Struct.newBuilder()
+                                .putFields("text", Value.newBuilder().setStringValue(chunkText).build())
+                                .putFields("source", Value.newBuilder().setStringValue(source).build())
+                                .build(),
+                        null
+                ));
+            }
+        }
+
+        // 分批上传，单次请求不要太大
+        for (int from = 0; from < upsertList.size(); from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, upsertList.size());
+            index.upsert(upsertList.subList(from, to), getProfile().getNamespace());
+            progress.accept(to, upsertList.size());
+        }
+        return "✅ 成功！已上传 " + upsertList.size() + " 块到 [" + getProfile().getName() + "]。";
+    }
+
+    @Override
+    public List<VectorSearchResult> search(String query) {
+        List<Float> queryVector = embedder.embed(query);
+        if (queryVector == null) return List.of();
+
+        QueryResponseWithUnsignedIndices queryResponse = index.query(
+                20,
+                queryVector,
+                null,
+                null,
+                null,
+                getProfile().getNamespace(),
+                null,
+                false,
+                true
+        );
+
+        return queryResponse.getMatchesList().stream()
+                .filter(match -> match.getScore() > 0.5) // 智谱 0.5
+                .map(match -> new VectorSearchResult(
+                        match.getMetadata().getFieldsMap().get("text").getStringValue(),
+                        match.getScore(),
+                        match.getMetadata().getFieldsMap().get("source").getStringValue()
+                ))
+                .toList();
+    }
+}
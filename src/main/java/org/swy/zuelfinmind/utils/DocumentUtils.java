@@ -1,9 +1,13 @@
 package org.swy.zuelfinmind.utils;
 
 import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +32,30 @@ public class DocumentUtils {
         }
     }
 
+    /**
+     * 解析已经读进内存的文件（后台入库任务用，文件名帮助 Tika 判断类型）
+     */
+    public static String parseBytes(String filename, byte[] data) {
+        try {
+            System.out.println("📄 正在解析文件: " + filename);
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename);
+            return tika.parseToString(new ByteArrayInputStream(data), metadata);
+        } catch (IOException | org.apache.tika.exception.TikaException e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+
+    /**
+     * 🔥 预热：Tika 的解析器注册表在第一次解析时才初始化，启动时先解析一段合成文本
+     */
+    public static void warmUp() throws IOException, org.apache.tika.exception.TikaException {
+        byte[] sample = "ZUEL-FinMind warm-up 预热文本".getBytes(StandardCharsets.UTF_8);
+        tika.detect(sample);
+        tika.parseToString(new ByteArrayInputStream(sample));
+    }
+
     /**
      * 2. 【切割】把长文本切成小块（Chunking）
      * @param text 原始长文本
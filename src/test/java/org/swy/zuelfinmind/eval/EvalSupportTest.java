@@ -0,0 +1,53 @@
+package org.swy.zuelfinmind.eval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EvalSupportTest {
+
+    private static final List<String> RESULTS = List.of(
+            "Java是一门面向对象的编程语言",
+            "中南财经政法大学位于武汉，简称中南大",
+            "Java不仅能写后端，还能写安卓应用");
+
+    @Test
+    void recallCountsLabelsCoveredByAnyChunk() {
+        assertThat(EvalSupport.recall(RESULTS, List.of("位于武汉", "Java不仅能写后端"))).isEqualTo(1.0);
+        assertThat(EvalSupport.recall(RESULTS, List.of("位于武汉", "南湖校区"))).isEqualTo(0.5);
+        assertThat(EvalSupport.recall(List.of(), List.of("位于武汉"))).isZero();
+    }
+
+    @Test
+    void chunkShorterThanLabelStillMatches() {
+        // 切块比标注短时，块被标注包含也算命中
+        assertThat(EvalSupport.matches("位于武汉", "中南财经政法大学位于武汉")).isTrue();
+        assertThat(EvalSupport.matches("位于北京", "中南财经政法大学位于武汉")).isFalse();
+    }
+
+    @Test
+    void reciprocalRankUsesFirstRelevantPosition() {
+        assertThat(EvalSupport.reciprocalRank(RESULTS, List.of("面向对象"))).isEqualTo(1.0);
+        assertThat(EvalSupport.reciprocalRank(RESULTS, List.of("位于武汉"))).isEqualTo(0.5);
+        assertThat(EvalSupport.reciprocalRank(RESULTS, List.of("安卓", "位于武汉"))).isEqualTo(0.5);
+        assertThat(EvalSupport.reciprocalRank(RESULTS, List.of("南湖校区"))).isZero();
+    }
+
+    @Test
+    void ndcgIsOneForIdealRanking() {
+        assertThat(EvalSupport.ndcg(RESULTS, List.of("面向对象"), 3)).isEqualTo(1.0);
+        // 唯一的相关结果排在第 2 位：1/log2(3)
+        assertThat(EvalSupport.ndcg(RESULTS, List.of("位于武汉"), 3)).isCloseTo(1 / (Math.log(3) / Math.log(2)), within(1e-9));
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        List<Integer> values = List.of(5, 1, 4, 2, 3);
+        assertThat(EvalSupport.percentile(values, 50)).isEqualTo(3.0);
+        assertThat(EvalSupport.percentile(values, 99)).isEqualTo(5.0);
+        assertThat(EvalSupport.percentile(List.<Integer>of(), 50)).isZero();
+    }
+}
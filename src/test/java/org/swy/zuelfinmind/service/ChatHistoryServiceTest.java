@@ -0,0 +1,104 @@
+package org.swy.zuelfinmind.service;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.swy.zuelfinmind.dto.HistoryPage;
+import org.swy.zuelfinmind.entity.ChatRecord;
+import org.swy.zuelfinmind.mapper.ChatRecordMapper;
+import org.swy.zuelfinmind.service.codec.HistoryCodecs;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatHistoryServiceTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 1, 1, 10, 0, 0, 123_000_000);
+
+    @Test
+    void cursorRoundTrip() {
+        String cursor = ChatHistoryService.encodeCursor(TIME, 42L);
+
+        assertThat(cursor).doesNotContain(TIME.toString());
+        ChatHistoryService.Cursor decoded = ChatHistoryService.decodeCursor(cursor);
+        assertThat(decoded.createTime()).isEqualTo(TIME);
+        assertThat(decoded.id()).isEqualTo(42L);
+    }
+
+    @Test
+    void cursorKeepsIdForRecordsWithSameTimestamp() {
+        // 同一毫秒写入的两条记录，只能靠 id 区分翻页位置
+        String first = ChatHistoryService.encodeCursor(TIME, 41L);
+        String second = ChatHistoryService.encodeCursor(TIME, 42L);
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(ChatHistoryService.decodeCursor(first).id()).isEqualTo(41L);
+        assertThat(ChatHistoryService.decodeCursor(second).id()).isEqualTo(42L);
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        String noSeparator = Base64.getUrlEncoder().encodeToString("2026-01-01T10:00".getBytes(StandardCharsets.UTF_8));
+        String badTime = Base64.getUrlEncoder().encodeToString("yesterday_42".getBytes(StandardCharsets.UTF_8));
+        String badId = Base64.getUrlEncoder().encodeToString((TIME + "_x").getBytes(StandardCharsets.UTF_8));
+
+        for (String cursor : List.of("%%%", noSeparator, badTime, badId)) {
+            assertThatThrownBy(() -> ChatHistoryService.decodeCursor(cursor))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void nextCursorPointsAtLastRecordOfPage() {
+        ChatRecordMapper mapper = mock(ChatRecordMapper.class);
+        // 多查的那一条（第 size+1 条）只用来判断还有下一页，不能当成游标
+        when(mapper.selectList(any(Wrapper.class))).thenReturn(records(3L, 2L, 1L));
+        ChatHistoryService service = service(mapper);
+
+        HistoryPage page = service.getHistoryPage("u1", null, 2);
+
+        assertThat(page.getRecords()).extracting(ChatRecord::getId).containsExactly(3L, 2L);
+        ChatHistoryService.Cursor next = ChatHistoryService.decodeCursor(page.getNextCursor());
+        assertThat(next.createTime()).isEqualTo(TIME);
+        assertThat(next.id()).isEqualTo(2L);
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        ChatRecordMapper mapper = mock(ChatRecordMapper.class);
+        when(mapper.selectList(any(Wrapper.class))).thenReturn(records(1L));
+        ChatHistoryService service = service(mapper);
+
+        HistoryPage page = service.getHistoryPage("u1", ChatHistoryService.encodeCursor(TIME, 2L), 2);
+
+        assertThat(page.getRecords()).hasSize(1);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChatHistoryService service(ChatRecordMapper mapper) {
+        return new ChatHistoryService(mock(HistoryCodecs.class), mock(RedisTemplate.class), mapper,
+                mock(UserHistoryFilter.class));
+    }
+
+    private List<ChatRecord> records(Long... ids) {
+        List<ChatRecord> records = new ArrayList<>();
+        for (Long id : ids) {
+            ChatRecord record = new ChatRecord();
+            record.setId(id);
+            record.setUserId("u1");
+            record.setCreateTime(TIME);
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,78 @@
+package org.swy.zuelfinmind.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.swy.zuelfinmind.config.IntentProperties;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntentRouterTest {
+
+    private final IntentProperties properties = new IntentProperties();
+
+    private final IntentRouter router = new IntentRouter(properties, new SimpleMeterRegistry());
+
+    @ParameterizedTest
+    @ValueSource(strings = {"你好", "您好！", "谢谢！", "再见"})
+    void greetingsSkipRetrieval(String message) {
+        IntentRouter.Decision decision = router.classify(message);
+
+        assertThat(decision.intent()).isEqualTo(IntentRouter.Intent.CHITCHAT);
+        assertThat(decision.skipRetrieval()).isTrue();
+    }
+
+    @Test
+    void questionAboutPreviousTurnSkipsRetrieval() {
+        IntentRouter.Decision decision = router.classify("我刚才问了什么？");
+
+        assertThat(decision.intent()).isEqualTo(IntentRouter.Intent.HISTORY);
+        assertThat(decision.skipRetrieval()).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ZUEL之前叫什么", "中南财经政法大学有哪些实验班？", "Java能干什么？", "保研需要什么条件"})
+    void knowledgeQuestionsAreRetrieved(String message) {
+        IntentRouter.Decision decision = router.classify(message);
+
+        assertThat(decision.intent()).isEqualTo(IntentRouter.Intent.KNOWLEDGE);
+        assertThat(decision.skipRetrieval()).isFalse();
+    }
+
+    @Test
+    void followUpThatNeedsKnowledgeIsNotSkipped() {
+        // 提到了上文，但问的还是知识库里的东西
+        assertThat(router.classify("你之前说的实验班有哪些专业？").skipRetrieval()).isFalse();
+    }
+
+    @Test
+    void confidenceIsShareOfTotalScore() {
+        IntentRouter.Decision decision = router.classify("你好");
+
+        assertThat(decision.confidence()).isGreaterThanOrEqualTo(properties.getConfidenceThreshold()).isLessThanOrEqualTo(1.0);
+    }
+
+    @Test
+    void onlyEnforceModeActuallySkips() {
+        IntentRouter.Decision greeting = router.classify("你好");
+
+        properties.setMode(IntentProperties.Mode.SHADOW);
+        assertThat(router.shouldSkip(greeting)).isFalse();
+
+        properties.setMode(IntentProperties.Mode.ENFORCE);
+        assertThat(router.shouldSkip(greeting)).isTrue();
+        assertThat(router.shouldSkip(router.classify("ZUEL之前叫什么"))).isFalse();
+    }
+
+    @Test
+    void higherThresholdKeepsBorderlineMessagesRetrieving() {
+        properties.setConfidenceThreshold(0.99);
+
+        for (String message : List.of("你好", "我刚才问了什么？")) {
+            assertThat(router.classify(message).skipRetrieval()).isFalse();
+        }
+    }
+}
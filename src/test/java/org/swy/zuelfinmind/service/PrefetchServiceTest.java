@@ -0,0 +1,62 @@
+package org.swy.zuelfinmind.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PrefetchServiceTest {
+
+    private final Reranker reranker = mock(Reranker.class);
+
+    @SuppressWarnings("unchecked")
+    private PrefetchService service(double threshold) {
+        PrefetchService service = new PrefetchService(mock(RedisTemplate.class), new ObjectMapper(), reranker,
+                mock(RetrievalCacheService.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "matchThreshold", threshold);
+        return service;
+    }
+
+    @Test
+    void sameQuestionAfterNormalizationMatchesWithoutSegmentation() {
+        // 只差大小写、首尾空格和句末标点
+        assertThat(service(0.8).matches(" ZUEL在哪里 ", "zuel在哪里？")).isTrue();
+        verifyNoInteractions(reranker);
+    }
+
+    @Test
+    void keywordOverlapAtThresholdMatches() {
+        when(reranker.keywords("draft")).thenReturn(Set.of("中南", "财经", "政法", "大学"));
+        when(reranker.keywords("message")).thenReturn(Set.of("中南", "财经", "政法", "大学", "校区"));
+
+        // Jaccard = 4 / 5 = 0.8
+        assertThat(service(0.8).matches("draft", "message")).isTrue();
+        assertThat(service(0.81).matches("draft", "message")).isFalse();
+    }
+
+    @Test
+    void keywordOverlapBelowThresholdDoesNotMatch() {
+        when(reranker.keywords("draft")).thenReturn(Set.of("中南", "财经", "政法"));
+        when(reranker.keywords("message")).thenReturn(Set.of("中南", "财经", "政法", "学费", "宿舍"));
+
+        // Jaccard = 3 / 5 = 0.6
+        assertThat(service(0.8).matches("draft", "message")).isFalse();
+        assertThat(service(0.6).matches("draft", "message")).isTrue();
+    }
+
+    @Test
+    void draftWithoutKeywordsNeverMatches() {
+        when(reranker.keywords("嗯")).thenReturn(Set.of());
+        when(reranker.keywords("message")).thenReturn(Set.of("中南"));
+
+        assertThat(service(0.0).matches("嗯", "message")).isFalse();
+    }
+}
@@ -0,0 +1,210 @@
+package org.swy.zuelfinmind.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserHistoryFilterTest {
+
+    private static final String EMPTY_KEY = "finmind:history:empty:u1";
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ValueOperations<String, String> valueOps;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOps = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        registry = new SimpleMeterRegistry();
+    }
+
+    private UserHistoryFilter filter(long expectedUsers, double fpp) {
+        UserHistoryFilter filter = new UserHistoryFilter(redisTemplate, mock(JdbcTemplate.class), registry, expectedUsers, fpp);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "emptyTtlSeconds", 600);
+        return filter;
+    }
+
+    @Test
+    void sizingFollowsStandardFormulas() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        // m = -n·ln(p)/(ln2)² ≈ 958506，k = m/n·ln2 ≈ 6.64
+        assertThat(filter.bits()).isEqualTo(958_506L);
+        assertThat(filter.hashes()).isEqualTo(7);
+    }
+
+    @Test
+    void sizingIsClampedToRedisBitmapLimits() {
+        assertThat(filter(1, 0.5).bits()).isEqualTo(64);
+        // 最后一位留给哨兵，位图最多 2^32 位
+        assertThat(filter(10_000_000_000L, 1e-6).bits()).isEqualTo((1L << 32) - 1);
+    }
+
+    @Test
+    void expectedFppMatchesTargetAtDesignedLoad() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        assertThat(UserHistoryFilter.expectedFpp(filter.hashes(), 100_000, filter.bits())).isCloseTo(0.01, within(0.001));
+        assertThat(UserHistoryFilter.expectedFpp(filter.hashes(), 0, filter.bits())).isZero();
+        // 用户数翻倍，误判率明显变差
+        assertThat(UserHistoryFilter.expectedFpp(filter.hashes(), 200_000, filter.bits())).isGreaterThan(0.1);
+    }
+
+    @Test
+    void offsetsAreDeterministicAndStayBelowSentinel() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        long[] offsets = filter.offsets("user-42");
+
+        assertThat(offsets).hasSize(filter.hashes()).containsExactly(filter.offsets("user-42"));
+        for (long offset : offsets) {
+            assertThat(offset).isBetween(0L, filter.bits() - 1);
+        }
+        assertThat(filter.offsets("user-43")).isNotEqualTo(offsets);
+    }
+
+    @Test
+    void offsetsSpreadAcrossTheBitmap() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        // 1000 个用户 × 7 个哈希，位图近百万位，几乎不应该撞在同一位上
+        Set<Long> distinct = new HashSet<>();
+        int total = 0;
+        for (int i = 0; i < 1000; i++) {
+            for (long offset : filter.offsets("user-" + i)) {
+                distinct.add(offset);
+                total++;
+            }
+        }
+        assertThat(distinct.size()).isGreaterThan(total * 99 / 100);
+    }
+
+    @Test
+    void lookupDistinguishesNegativePositiveAndMissingSentinel() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+        String meta = meta(filter, 1000);
+
+        pipelineReturns(meta, true, true);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.BLOOM_POSITIVE);
+
+        pipelineReturns(meta, true, false);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.EMPTY);
+
+        // 哨兵位丢了：位图不可信，只能查库
+        pipelineReturns(meta, false, false);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.UNKNOWN);
+    }
+
+    @Test
+    void bitmapBuiltWithOtherParamsIsNotTrusted() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+        UserHistoryFilter other = filter(1_000_000, 0.001);
+
+        // 别的实例换了参数重建：按本实例的参数探测，全 0 的位会被当成“没有”
+        pipelineReturns(meta(other, 1000), true, false);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.UNKNOWN);
+
+        pipelineReturns(null, true, false);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.UNKNOWN);
+
+        assertThat(filter.trusted(filter.bits() + ":" + filter.hashes())).isFalse();
+        assertThat(filter.trusted(meta(filter, 1000))).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedPutDistrustsBitmapUntilNextRebuild() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RuntimeException("timeout"));
+
+        filter.markPresent("u1");
+
+        // 对话已经落库但位没写进去：删掉空标记，之前建的位图不再信
+        verify(redisTemplate).delete(EMPTY_KEY);
+        pipelineReturns(meta(filter, 1000), true, false);
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.UNKNOWN);
+        // 失败之后才开始的重建包含了这个用户，可以再信
+        assertThat(filter.trusted(meta(filter, System.currentTimeMillis() + 1000))).isTrue();
+    }
+
+    @Test
+    void emptyMarkerShortCircuitsButPresentMarkerDoesNot() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+        // 位图还没建好
+        pipelineReturns(null, true, true);
+
+        when(valueOps.get(EMPTY_KEY)).thenReturn("1");
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.EMPTY);
+
+        when(valueOps.get(EMPTY_KEY)).thenReturn("0");
+        assertThat(filter.lookup("u1")).isEqualTo(UserHistoryFilter.Lookup.UNKNOWN);
+    }
+
+    @Test
+    void falsePositiveCountedOnlyForBloomPositives() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        filter.markEmpty("u1", UserHistoryFilter.Lookup.UNKNOWN);
+        assertThat(registry.get("finmind.history.bloom.false.positive").counter().count()).isZero();
+
+        filter.markEmpty("u1", UserHistoryFilter.Lookup.BLOOM_POSITIVE);
+        assertThat(registry.get("finmind.history.bloom.false.positive").counter().count()).isEqualTo(1);
+
+        // 空标记只用 NX 写，不会盖掉并发保存写下的“有历史”
+        verify(valueOps, never()).set(eq(EMPTY_KEY), eq("1"), any(Duration.class));
+        verify(valueOps, times(2)).setIfAbsent(EMPTY_KEY, "1", Duration.ofSeconds(600));
+    }
+
+    @Test
+    void markPresentOverwritesEmptyMarker() {
+        UserHistoryFilter filter = filter(100_000, 0.01);
+
+        filter.markPresent("u1");
+
+        verify(valueOps).set(EMPTY_KEY, "0", Duration.ofSeconds(600));
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    private static String meta(UserHistoryFilter filter, long buildStart) {
+        return filter.bits() + ":" + filter.hashes() + "@" + buildStart;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pipelineReturns(String meta, boolean sentinel, boolean userBits) {
+        List<Object> results = new ArrayList<>();
+        results.add(meta);
+        results.add(sentinel);
+        results.addAll(Collections.nCopies(7, userBits));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(results);
+    }
+}
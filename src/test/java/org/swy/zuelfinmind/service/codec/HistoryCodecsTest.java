@@ -0,0 +1,109 @@
+package org.swy.zuelfinmind.service.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.swy.zuelfinmind.model.HistoryNode;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HistoryCodecsTest {
+
+    private static final HistoryNode SHORT = new HistoryNode("ZUEL在哪里？", "ZUEL位于湖北省武汉市。");
+    private static final HistoryNode LONG = new HistoryNode("介绍一下ZUEL", "中南财经政法大学位于湖北省武汉市。".repeat(50));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private HistoryCodecs codecs(String codec) {
+        return new HistoryCodecs(new ObjectMapper(), registry, codec, 512);
+    }
+
+    @Test
+    void shortNodeRoundTripsAsPlainSmile() throws IOException {
+        HistoryCodecs codecs = codecs("smile");
+
+        byte[] data = codecs.encode(SHORT);
+
+        assertThat(data[0]).isEqualTo(SmileHistoryCodec.VERSION_SMILE);
+        assertSameNode(codecs.decode(data), SHORT);
+    }
+
+    @Test
+    void longNodeIsCompressedAndRoundTrips() throws IOException {
+        HistoryCodecs codecs = codecs("smile");
+
+        byte[] data = codecs.encode(LONG);
+
+        assertThat(data[0]).isEqualTo(SmileHistoryCodec.VERSION_SMILE_DEFLATE);
+        assertThat(data.length).isLessThan(new ObjectMapper().writeValueAsBytes(LONG).length);
+        assertSameNode(codecs.decode(data), LONG);
+    }
+
+    @Test
+    void smileReaderStillDecodesLegacyJson() throws IOException {
+        // 升级前写进 Redis 的纯 JSON，升级后还要能读
+        byte[] legacy = codecs("json").encode(SHORT);
+
+        assertThat(legacy[0]).isEqualTo((byte) '{');
+        assertSameNode(codecs("smile").decode(legacy), SHORT);
+    }
+
+    @Test
+    void smileDataIsReadableAfterRollingBackToJsonWriter() throws IOException {
+        byte[] smile = codecs("smile").encode(LONG);
+
+        // 回滚到 json 写入：新写的是纯 JSON，已经存成 Smile 的数据照样能读
+        HistoryCodecs rolledBack = codecs("json");
+        byte[] json = rolledBack.encode(SHORT);
+
+        assertThat(json[0]).isEqualTo((byte) '{');
+        assertSameNode(rolledBack.decode(json), SHORT);
+        assertSameNode(rolledBack.decode(smile), LONG);
+    }
+
+    @Test
+    void emptyOrUnknownDataIsRejected() {
+        HistoryCodecs codecs = codecs("smile");
+
+        assertThatThrownBy(() -> codecs.decode(new byte[0])).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> codecs.decode(null)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> codecs.decode(new byte[]{0x7f, 0x00})).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void warmUpDoesNotRecordMetrics() throws IOException {
+        HistoryCodecs codecs = codecs("smile");
+
+        codecs.warmUp(SHORT, 10);
+        codecs.warmUp(LONG, 10);
+
+        assertThat(registry.get("finmind.history.codec.encode").timer().count()).isZero();
+        assertThat(registry.get("finmind.history.codec.decode").timer().count()).isZero();
+        assertThat(registry.get("finmind.history.codec.size").summary().count()).isZero();
+
+        codecs.decode(codecs.encode(LONG));
+        assertThat(registry.get("finmind.history.codec.encode").timer().count()).isEqualTo(1);
+        assertThat(registry.get("finmind.history.codec.bytes.saved").counter().count()).isPositive();
+    }
+
+    @Test
+    void bytesSavedIsSampledAndScaled() throws IOException {
+        HistoryCodecs codecs = codecs("smile");
+        int saved = new ObjectMapper().writeValueAsBytes(LONG).length - codecs.encode(LONG).length;
+
+        // 第一次写入被抽中，之后 SAVINGS_SAMPLE_EVERY - 1 次都不再做 JSON 对比
+        for (int i = 1; i < HistoryCodecs.SAVINGS_SAMPLE_EVERY; i++) {
+            codecs.encode(LONG);
+        }
+        assertThat(registry.get("finmind.history.codec.bytes.saved").counter().count())
+                .isEqualTo((double) saved * HistoryCodecs.SAVINGS_SAMPLE_EVERY);
+    }
+
+    private static void assertSameNode(HistoryNode actual, HistoryNode expected) {
+        assertThat(actual.question).isEqualTo(expected.question);
+        assertThat(actual.answer).isEqualTo(expected.answer);
+    }
+}
@@ -0,0 +1,82 @@
+package org.swy.zuelfinmind.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryIngestionQueueTest {
+
+    private static final String WORKER = "worker-1";
+
+    @Test
+    void ackedJobIsNotRedelivered() {
+        InMemoryIngestionQueue queue = new InMemoryIngestionQueue(0);
+        queue.enqueue("job-1");
+
+        IngestionQueue.Delivery delivery = queue.poll(WORKER);
+        assertThat(delivery.jobId()).isEqualTo("job-1");
+        assertThat(delivery.deliveryCount()).isEqualTo(1);
+
+        queue.ack(delivery);
+        assertThat(queue.poll(WORKER)).isNull();
+    }
+
+    @Test
+    void unackedJobIsRedeliveredAfterVisibilityTimeout() {
+        // 超时为 0：没 ack 的任务下一次 poll 就会重新投递
+        InMemoryIngestionQueue queue = new InMemoryIngestionQueue(0);
+        queue.enqueue("job-1");
+
+        IngestionQueue.Delivery first = queue.poll(WORKER);
+        IngestionQueue.Delivery second = queue.poll(WORKER);
+
+        assertThat(second.id()).isEqualTo(first.id());
+        assertThat(second.deliveryCount()).isEqualTo(2);
+    }
+
+    @Test
+    void inFlightJobIsHiddenUntilTimeout() {
+        InMemoryIngestionQueue queue = new InMemoryIngestionQueue(60);
+        queue.enqueue("job-1");
+        queue.enqueue("job-2");
+
+        assertThat(queue.poll(WORKER).jobId()).isEqualTo("job-1");
+        assertThat(queue.poll(WORKER).jobId()).isEqualTo("job-2");
+        assertThat(queue.poll(WORKER)).isNull();
+    }
+
+    @Test
+    void extendKeepsDeliveryCount() {
+        InMemoryIngestionQueue queue = new InMemoryIngestionQueue(60);
+        queue.enqueue("job-1");
+        IngestionQueue.Delivery delivery = queue.poll(WORKER);
+
+        queue.extend(delivery, WORKER);
+        queue.extend(delivery, WORKER);
+
+        assertThat(queue.poll(WORKER)).isNull();
+        // 续期后的投递仍然能 ack 掉
+        queue.ack(delivery);
+        assertThat(queue.poll(WORKER)).isNull();
+    }
+
+    @Test
+    void releasedJobComesBackAfterBackoff() {
+        InMemoryIngestionQueue queue = new InMemoryIngestionQueue(60);
+        queue.enqueue("job-1");
+
+        IngestionQueue.Delivery delivery = queue.poll(WORKER);
+        queue.release(delivery, WORKER, Duration.ofMinutes(5));
+        assertThat(queue.poll(WORKER)).isNull();
+
+        IngestionQueue.Delivery again = queue.poll("worker-2");
+        assertThat(again).isNull();
+
+        queue.release(delivery, WORKER, Duration.ZERO);
+        IngestionQueue.Delivery retried = queue.poll("worker-2");
+        assertThat(retried.jobId()).isEqualTo("job-1");
+        assertThat(retried.deliveryCount()).isEqualTo(2);
+    }
+}